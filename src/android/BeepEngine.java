@@ -0,0 +1,302 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.io.IOException;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaMetadataRetriever;
+import android.media.Ringtone;
+import android.media.RingtoneManager;
+import android.media.SoundPool;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * Plays the beep sound.
+ *
+ * The sound (a bundled asset, or the default notification sound) is decoded
+ * once into a SoundPool, which can start it with very little latency.
+ * Repeats are scheduled on a Handler of a dedicated thread instead of
+ * sleeping, so no thread is held while a beep sequence is running.
+ * If the sound cannot be loaded into the SoundPool the engine falls back to
+ * playing the Ringtone.
+ *
+ * beep() and cancel() may be called from any thread, everything else runs on
+ * the engine thread.
+ */
+final class BeepEngine {
+
+    private static final String LOG_TAG = "Notification";
+
+    /** Used when the duration of the sound cannot be determined. */
+    private static final long DEFAULT_INTERVAL_MS = 500;
+
+    /** Same upper bound the blocking implementation used per beep. */
+    private static final long MAX_INTERVAL_MS = 5000;
+
+    /**
+     * One call to beep().
+     */
+    private final class Run implements Runnable {
+        final long count;
+        final long interval;
+        final CallbackContext callbackContext;
+        long played;
+        int streamId;
+
+        Run(long count, long interval, CallbackContext callbackContext) {
+            this.count = count;
+            this.interval = interval;
+            this.callbackContext = callbackContext;
+        }
+
+        public void run() {
+            if (current != this) {
+                return;
+            }
+            if (played < count) {
+                streamId = play();
+                played++;
+                handler.postDelayed(this, interval > 0 ? interval : soundDuration);
+            } else {
+                complete(this);
+            }
+        }
+    }
+
+    private final Context context;
+    private final String assetPath;
+    private final Handler handler;
+    private final HandlerThread thread;
+
+    // Engine thread only.
+    private boolean prepared;
+    private SoundPool soundPool;
+    private int soundId;
+    private boolean loaded;
+    private Ringtone ringtone;
+    private long soundDuration = DEFAULT_INTERVAL_MS;
+    private Run current;
+
+    /**
+     * @param context       Context used to resolve the sound
+     * @param assetPath     Path of a bundled sound in the assets, or null for the
+     *                      default notification sound
+     */
+    BeepEngine(Context context, String assetPath) {
+        this.context = context;
+        this.assetPath = assetPath;
+        this.thread = new HandlerThread("NotificationBeep");
+        this.thread.start();
+        this.handler = new Handler(this.thread.getLooper());
+    }
+
+    /**
+     * Decodes the sound ahead of the first beep. Never blocks.
+     */
+    void prepareAsync() {
+        handler.post(new Runnable() {
+            public void run() {
+                prepare();
+            }
+        });
+    }
+
+    /**
+     * Starts a beep sequence, replacing the one in progress. Never blocks.
+     *
+     * @param count             Number of beeps
+     * @param interval          Milliseconds between the start of two beeps,
+     *                          or 0 to use the duration of the sound
+     * @param callbackContext   Receives the number of beeps played once the
+     *                          sequence has finished or was cancelled, may be null
+     */
+    void beep(long count, long interval, CallbackContext callbackContext) {
+        final Run run = new Run(count, interval, callbackContext);
+        handler.post(new Runnable() {
+            public void run() {
+                stop();
+                prepare();
+                current = run;
+                if (loaded || soundPool == null) {
+                    run.run();
+                }
+                // else the load listener starts it
+            }
+        });
+    }
+
+    /**
+     * Stops the beep sequence in progress, if any. Never blocks.
+     */
+    void cancel() {
+        handler.post(new Runnable() {
+            public void run() {
+                stop();
+            }
+        });
+    }
+
+    /**
+     * Stops playback, releases the sound and ends the engine thread.
+     */
+    void release() {
+        handler.post(new Runnable() {
+            public void run() {
+                stop();
+                if (soundPool != null) {
+                    soundPool.release();
+                    soundPool = null;
+                }
+                thread.quit();
+            }
+        });
+    }
+
+    private void stop() {
+        Run run = current;
+        if (run == null) {
+            return;
+        }
+        handler.removeCallbacks(run);
+        if (soundPool != null) {
+            soundPool.stop(run.streamId);
+        } else if (ringtone != null) {
+            ringtone.stop();
+        }
+        complete(run);
+    }
+
+    private void complete(Run run) {
+        if (current == run) {
+            current = null;
+        }
+        if (run.callbackContext != null) {
+            run.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, (int) run.played));
+        }
+    }
+
+    private int play() {
+        if (soundPool != null) {
+            return soundPool.play(soundId, 1f, 1f, 1, 0, 1f);
+        }
+        if (ringtone != null) {
+            ringtone.play();
+        }
+        return 0;
+    }
+
+    private void prepare() {
+        if (prepared) {
+            return;
+        }
+        prepared = true;
+
+        AssetFileDescriptor afd = null;
+        try {
+            if (assetPath != null) {
+                afd = context.getAssets().openFd(assetPath);
+            } else {
+                Uri uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+                afd = uri == null ? null : context.getContentResolver().openAssetFileDescriptor(uri, "r");
+            }
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Beep sound cannot be opened, falling back to Ringtone", e);
+        } catch (SecurityException e) {
+            LOG.w(LOG_TAG, "Beep sound cannot be opened, falling back to Ringtone", e);
+        }
+
+        if (afd == null) {
+            // If phone is not set to silent mode
+            ringtone = RingtoneManager.getRingtone(context, RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION));
+            return;
+        }
+
+        soundDuration = readDuration(afd);
+        soundPool = createSoundPool();
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            public void onLoadComplete(SoundPool pool, int sampleId, int status) {
+                if (status == 0) {
+                    loaded = true;
+                } else {
+                    LOG.w(LOG_TAG, "Beep sound cannot be decoded, falling back to Ringtone");
+                    pool.release();
+                    soundPool = null;
+                    ringtone = RingtoneManager.getRingtone(context, RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION));
+                }
+                if (current != null && current.played == 0) {
+                    current.run();
+                }
+            }
+        });
+        soundId = soundPool.load(afd, 1);
+        try {
+            afd.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private long readDuration(AssetFileDescriptor afd) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (duration != null) {
+                return Math.min(MAX_INTERVAL_MS, Long.parseLong(duration));
+            }
+        } catch (RuntimeException e) {
+            // Unknown format, keep the default
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                // Declared as IOException from API 29, nothing to do about it.
+            }
+        }
+        return DEFAULT_INTERVAL_MS;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static SoundPool createSoundPool() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return createSoundPoolLollipop();
+        }
+        return new SoundPool(2, AudioManager.STREAM_NOTIFICATION, 0);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static SoundPool createSoundPoolLollipop() {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_NOTIFICATION)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+        return new SoundPool.Builder().setMaxStreams(2).setAudioAttributes(attributes).build();
+    }
+}
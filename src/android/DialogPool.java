@@ -0,0 +1,337 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cordova.CordovaInterface;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.widget.Button;
+import android.widget.LinearLayout;
+
+/**
+ * Builds the dialogs used for alert, confirm, prompt and the progress
+ * indicators, and optionally keeps them around for reuse.
+ *
+ * Every alert dialog is created once with all three buttons, and is rebound
+ * to a request each time it is shown. The views below the message, like the
+ * prompt input, are built the first time a request needs them. With retain set,
+ * dismissed dialogs go back to the pool instead of being dropped, so a
+ * dialog shown every few seconds costs no allocation or inflation.
+ * The pool belongs to one activity and is emptied when the activity changes
+ * or clear() is called. UI thread only.
+ */
+final class DialogPool {
+
+    /**
+     * One reusable alert dialog and its content view.
+     */
+    final class Entry {
+        final AlertDialog dialog;
+        private final Activity activity;
+        private final PromptInput.Buttons validatedButtons;
+
+        /**
+         * Holds the views below the message. Built with the entry when it may
+         * be reused, since the dialog only picks up a view set before it is
+         * first shown; otherwise only when the request needs it.
+         */
+        private LinearLayout content;
+
+        /** Built on first use, most dialogs never need them. */
+        PromptInput input;
+        FormFields form;
+        LargeMessageView largeMessage;
+        SelectList select;
+        DialogRequest request;
+        DialogScheduler scheduler;
+        private boolean shownOnce;
+
+        Entry(Activity activity, boolean reusable) {
+            this.activity = activity;
+            validatedButtons = new PromptInput.Buttons() {
+                public void setEnabled(int buttonIndex, boolean enabled) {
+                    Button button = dialog.getButton(buttonIndex == 1 ? DialogInterface.BUTTON_NEGATIVE
+                            : (buttonIndex == 2 ? DialogInterface.BUTTON_NEUTRAL : DialogInterface.BUTTON_POSITIVE));
+                    if (button != null) {
+                        button.setEnabled(enabled);
+                    }
+                }
+            };
+
+            AlertDialog.Builder dlg = Notification.createDialog(cordova);
+            dlg.setCancelable(true);
+            // AlertController only creates visible buttons for non-empty
+            // labels, so every button gets a placeholder here and its real
+            // label once the dialog is bound.
+            DialogInterface.OnClickListener clickListener = new DialogInterface.OnClickListener() {
+                public void onClick(DialogInterface d, int which) {
+                    onButton(which);
+                }
+            };
+            dlg.setNegativeButton(" ", clickListener);
+            dlg.setNeutralButton(" ", clickListener);
+            dlg.setPositiveButton(" ", clickListener);
+            dlg.setOnCancelListener(new DialogInterface.OnCancelListener() {
+                public void onCancel(DialogInterface d) {
+                    finish(DialogRequest.RESULT_DISMISSED);
+                }
+            });
+            dialog = dlg.create();
+            if (reusable) {
+                createContent();
+            }
+            dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+                public void onDismiss(DialogInterface d) {
+                    release(Entry.this);
+                }
+            });
+        }
+
+        void bind(DialogRequest request, DialogScheduler scheduler) {
+            this.request = request;
+            this.scheduler = scheduler;
+            // The content reads large message, input, form, select.
+            boolean isPrompt = request.kind == DialogRequest.PROMPT;
+            boolean isForm = request.kind == DialogRequest.FORM;
+            if (content == null && (request.largeMessage != null || isPrompt || isForm || request.items != null)) {
+                // Not reusable, so this is the first and only time it is shown.
+                createContent();
+            }
+            if (request.largeMessage != null && largeMessage == null) {
+                largeMessage = new LargeMessageView(activity);
+                content.addView(largeMessage.view, 0);
+            }
+            if (isPrompt && input == null) {
+                input = new PromptInput(activity, handler, validatedButtons);
+                content.addView(input.view, largeMessage != null ? 1 : 0);
+            }
+            if (isForm && form == null) {
+                form = new FormFields(activity, validatedButtons);
+                content.addView(form.view, (largeMessage != null ? 1 : 0) + (input != null ? 1 : 0));
+            }
+            if (request.items != null && select == null) {
+                select = new SelectList(activity);
+                content.addView(select.view);
+            }
+
+            dialog.setTitle(request.getDisplayTitle());
+            // A large message is shown by its own view. The message stays
+            // empty rather than null: AlertController drops the message view
+            // for good if the first request shown has none.
+            dialog.setMessage(request.largeMessage == null ? request.getMessage() : "");
+            if (largeMessage != null) {
+                largeMessage.bind(request);
+            }
+
+            dialog.show();
+            if (!shownOnce) {
+                shownOnce = true;
+                Notification.changeTextDirection(dialog);
+            }
+
+            bindButton(DialogInterface.BUTTON_NEGATIVE, request.buttonLabel(1));
+            bindButton(DialogInterface.BUTTON_NEUTRAL, request.buttonLabel(2));
+            bindButton(DialogInterface.BUTTON_POSITIVE, request.buttonLabel(3));
+            if (input != null) {
+                input.bind(request);
+            }
+            if (form != null) {
+                form.bind(request);
+            }
+            if (select != null) {
+                select.bind(request);
+            }
+        }
+
+        private void createContent() {
+            content = new LinearLayout(activity);
+            content.setOrientation(LinearLayout.VERTICAL);
+            dialog.setView(content);
+        }
+
+        private void bindButton(int which, String label) {
+            Button button = dialog.getButton(which);
+            if (button == null) {
+                return;
+            }
+            button.setEnabled(true);
+            if (label == null) {
+                button.setVisibility(View.GONE);
+            } else {
+                button.setText(label);
+                button.setVisibility(View.VISIBLE);
+            }
+        }
+
+        private void onButton(int which) {
+            if (request == null) {
+                return;
+            }
+            if (request.kind == DialogRequest.ALERT) {
+                finish(0);
+            } else if (which == DialogInterface.BUTTON_NEGATIVE) {
+                finish(1);
+            } else if (which == DialogInterface.BUTTON_NEUTRAL) {
+                finish(2);
+            } else {
+                finish(3);
+            }
+        }
+
+        private void finish(int buttonIndex) {
+            if (request == null) {
+                return;
+            }
+            String text = input != null ? input.finish() : null;
+            JSONObject values = form != null ? form.finish() : null;
+            JSONArray indexes = select != null ? select.finish() : null;
+            scheduler.finish(request, buttonIndex, values != null ? values : (indexes != null ? indexes : text));
+        }
+    }
+
+    private final CordovaInterface cordova;
+    private final boolean retain;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /** The activity the pooled dialogs belong to, weak so the pool never keeps it alive. */
+    private WeakReference<Activity> activity = new WeakReference<Activity>(null);
+    private final List<Entry> idle = new ArrayList<Entry>();
+    private ProgressDialog spinnerDialog;
+    private ProgressDialog progressDialog;
+
+    DialogPool(CordovaInterface cordova, boolean retain) {
+        this.cordova = cordova;
+        this.retain = retain;
+    }
+
+    /**
+     * Shows a request in a pooled or new alert dialog.
+     */
+    AlertDialog present(DialogRequest request, DialogScheduler scheduler) {
+        checkActivity();
+        Entry entry = idle.isEmpty() ? new Entry(activity.get(), retain) : idle.remove(idle.size() - 1);
+        entry.bind(request, scheduler);
+        return entry.dialog;
+    }
+
+    /**
+     * Returns a pooled or new progress dialog of the given style.
+     * The caller resets title, message, progress and listeners.
+     */
+    ProgressDialog progressDialog(int style) {
+        checkActivity();
+        boolean horizontal = style == ProgressDialog.STYLE_HORIZONTAL;
+        ProgressDialog dialog = horizontal ? progressDialog : spinnerDialog;
+        if (dialog == null) {
+            dialog = createProgressDialog(style);
+        }
+        // Without retain a warmed dialog is handed out once.
+        ProgressDialog kept = retain ? dialog : null;
+        if (horizontal) {
+            progressDialog = kept;
+        } else {
+            spinnerDialog = kept;
+        }
+        return dialog;
+    }
+
+    /**
+     * Builds one alert dialog and both progress dialogs ahead of the first
+     * call, so it does not pay for the theme, inflation and class loading.
+     * They are used for the next calls even without retain.
+     */
+    void warm() {
+        checkActivity();
+        if (idle.isEmpty()) {
+            idle.add(new Entry(activity.get(), true));
+        }
+        if (spinnerDialog == null) {
+            spinnerDialog = createProgressDialog(ProgressDialog.STYLE_SPINNER);
+        }
+        if (progressDialog == null) {
+            progressDialog = createProgressDialog(ProgressDialog.STYLE_HORIZONTAL);
+        }
+    }
+
+    private ProgressDialog createProgressDialog(int style) {
+        ProgressDialog dialog = Notification.createProgressDialog(cordova); // new ProgressDialog(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
+        dialog.setProgressStyle(style);
+        return dialog;
+    }
+
+    /**
+     * Drops every pooled dialog. Dialogs still on screen are dismissed.
+     */
+    void clear() {
+        for (Entry entry : idle) {
+            entry.dialog.dismiss();
+        }
+        idle.clear();
+        if (spinnerDialog != null) {
+            spinnerDialog.dismiss();
+            spinnerDialog = null;
+        }
+        if (progressDialog != null) {
+            progressDialog.dismiss();
+            progressDialog = null;
+        }
+        activity = new WeakReference<Activity>(null);
+    }
+
+    private void release(Entry entry) {
+        // Dismissed without an answer, e.g. by the scheduler: stop streaming.
+        if (entry.input != null) {
+            entry.input.finish();
+        }
+        if (entry.form != null) {
+            entry.form.finish();
+        }
+        if (entry.select != null) {
+            entry.select.finish();
+        }
+        if (entry.largeMessage != null) {
+            entry.largeMessage.clear();
+        }
+        entry.request = null;
+        entry.scheduler = null;
+        if (retain && activity.get() == cordova.getActivity() && !idle.contains(entry)) {
+            idle.add(entry);
+        }
+    }
+
+    private void checkActivity() {
+        Activity current = cordova.getActivity();
+        if (activity.get() != current) {
+            clear();
+            activity = new WeakReference<Activity>(current);
+        }
+    }
+}
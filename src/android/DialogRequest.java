@@ -0,0 +1,356 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.DialogInterface;
+
+/**
+ * A single alert, confirm, prompt, form or select waiting to be shown by the DialogScheduler.
+ *
+ * Identical requests are merged into one, so a request may hold several
+ * callback contexts; all of them receive the same result.
+ */
+final class DialogRequest {
+
+    private static final String LOG_TAG = "Notification";
+
+    static final int ALERT = 0;
+    static final int CONFIRM = 1;
+    static final int PROMPT = 2;
+    static final int FORM = 3;
+    static final int SELECT = 4;
+
+    /** buttonIndex reported when the dialog was dismissed without a button press. */
+    static final int RESULT_DISMISSED = 0;
+
+    /** buttonIndex reported when the activity went away or the page was reset before an answer. */
+    static final int RESULT_LIFECYCLE = -1;
+
+    /** buttonIndex reported when the dialog was not shown or not answered within its timeout. */
+    static final int RESULT_TIMEOUT = -2;
+
+    /** Default interval between two streamed prompt inputs, in milliseconds. */
+    static final int DEFAULT_STREAM_INTERVAL = 150;
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    /** Identifies the request to JavaScript, e.g. to append select items. */
+    final int id = NEXT_ID.incrementAndGet();
+
+    final int kind;
+    final String title;
+    final JSONArray buttonLabels;
+    final String defaultText;
+    final int priority;
+
+    /**
+     * Prompt only: milliseconds between two streamed inputs, or -1 when the
+     * input is only reported with the final result.
+     */
+    final int streamInterval;
+
+    /** Milliseconds the dialog may stay unanswered once shown, 0 for no limit. */
+    final long timeout;
+
+    /** Form only: the field descriptions, see FormFields. */
+    final JSONArray fields;
+
+    /** Select only: the items and the selection. */
+    final SelectList.Items items;
+
+    /** Prompt only: pattern the whole input must match, or null. */
+    final Pattern validation;
+
+    /** Prompt and form: one-based indexes of the buttons disabled while the input is invalid. */
+    final int[] validatedButtons;
+
+    /** Insertion order, used to keep FIFO order between equal priorities. */
+    long sequence;
+
+    /** Number of identical requests merged into this one. */
+    int repeatCount = 1;
+
+    /** The dialog or overlay card currently showing this request, UI thread only. */
+    DialogInterface dialog;
+
+    /** Pending timeout of the queued or visible dialog, UI thread only. */
+    Runnable timeoutTask;
+
+    /**
+     * The message split and laid out for the large message view, or null
+     * when it is short enough to be shown as is. Set on a background thread
+     * before DialogScheduler.ready() hands the request back to the UI thread.
+     */
+    LargeMessage largeMessage;
+
+    /**
+     * False while the large message is being laid out. The request keeps its
+     * place in the queue but is not shown until DialogScheduler.ready().
+     * Set before submit, then UI thread only.
+     */
+    boolean ready = true;
+
+    /** Timestamps for NotificationMetrics, 0 until reached. */
+    final long receivedAt = NotificationMetrics.now();
+    long pickedUpAt;
+    long shownAt;
+
+    private String message;
+    private final String key;
+
+    /** Set once append() changed the message, which the key no longer describes. */
+    private boolean appended;
+    private final List<CallbackContext> callbacks = new ArrayList<CallbackContext>(1);
+
+    DialogRequest(int kind, String message, String title, JSONArray buttonLabels, String defaultText,
+            JSONObject options, CallbackContext callbackContext) {
+        this(kind, message, title, buttonLabels, defaultText, null, options, callbackContext);
+    }
+
+    /**
+     * @param fields    The field descriptions of a form, or the first items of a select
+     */
+    DialogRequest(int kind, String message, String title, JSONArray buttonLabels, String defaultText,
+            JSONArray fields, JSONObject options, CallbackContext callbackContext) {
+        this.kind = kind;
+        this.message = message;
+        this.title = title;
+        this.buttonLabels = buttonLabels;
+        this.defaultText = defaultText;
+        this.fields = kind == SELECT ? null : fields;
+        this.items = kind == SELECT ? new SelectList.Items(fields, options) : null;
+        this.priority = options == null ? 0 : options.optInt("priority", 0);
+        this.timeout = options == null ? 0 : Math.max(0, options.optLong("timeout", 0));
+        this.streamInterval = options != null && options.optBoolean("stream", false)
+                ? Math.max(0, options.optInt("streamInterval", DEFAULT_STREAM_INTERVAL)) : -1;
+        this.validation = compile(options == null ? null : options.optString("pattern", null));
+        this.validatedButtons = buttonIndexes(options == null ? null : options.optJSONArray("validateButtons"));
+        // Items may still be appended to a select, so it is never the same as another one.
+        this.key = kind == SELECT ? "\u0000" + id
+                : kind + "\u0000" + title + "\u0000" + message + "\u0000" + buttonLabels + "\u0000" + fields + "\u0000" + options;
+        this.callbacks.add(callbackContext);
+    }
+
+    /**
+     * Compiles a validation pattern of a prompt or form field, or returns
+     * null if there is none or it is invalid.
+     */
+    static Pattern compile(String pattern) {
+        if (pattern == null || pattern.length() == 0) {
+            return null;
+        }
+        try {
+            return Pattern.compile(pattern);
+        } catch (PatternSyntaxException e) {
+            LOG.w(LOG_TAG, "Ignoring invalid pattern " + pattern);
+            return null;
+        }
+    }
+
+    private static int[] buttonIndexes(JSONArray indexes) {
+        if (indexes == null) {
+            return new int[] { 1 };
+        }
+        int[] result = new int[indexes.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indexes.optInt(i);
+        }
+        return result;
+    }
+
+    /**
+     * True if the input satisfies the validation pattern, or there is none.
+     */
+    boolean isValid(CharSequence input) {
+        return validation == null || validation.matcher(input).matches();
+    }
+
+    /**
+     * Streams the current prompt input to every callback context, keeping
+     * the callbacks open for the final result.
+     */
+    void sendInput(String input) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("event", "input");
+            json.put("input1", input);
+            json.put("valid", isValid(input));
+        } catch (JSONException e) { e.printStackTrace(); }
+        PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+        result.setKeepCallback(true);
+        for (CallbackContext callbackContext : callbacks) {
+            callbackContext.sendPluginResult(result);
+        }
+    }
+
+    /** Name of the plugin action that created this request. */
+    String action() {
+        switch (kind) {
+            case SELECT:
+                return "select";
+            case FORM:
+                return "form";
+            case PROMPT:
+                return "prompt";
+            case CONFIRM:
+                return "confirm";
+            default:
+                return "alert";
+        }
+    }
+
+    /** Number of callback contexts that will receive the result. */
+    int callbackCount() {
+        return callbacks.size();
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * The title as shown to the user, including the repeat count once
+     * identical requests have been merged.
+     */
+    String getDisplayTitle() {
+        return repeatCount > 1 ? title + " (" + repeatCount + ")" : title;
+    }
+
+    /**
+     * The label of the negative, neutral or positive button, reported as
+     * index 1, 2 and 3, or null if the dialog has no such button. An alert
+     * only has a positive button, with its single label.
+     */
+    String buttonLabel(int buttonIndex) {
+        if (kind == ALERT) {
+            return buttonIndex == 3 ? buttonLabels.optString(0) : null;
+        }
+        return buttonIndex - 1 < buttonLabels.length() ? buttonLabels.optString(buttonIndex - 1) : null;
+    }
+
+    /**
+     * True when both requests would show the same dialog. A request that had
+     * messages appended shows a dialog of its own.
+     */
+    boolean isSameAs(DialogRequest other) {
+        return !appended && !other.appended && key.equals(other.key);
+    }
+
+    /**
+     * Folds an identical request into this one.
+     */
+    void coalesce(DialogRequest other) {
+        callbacks.addAll(other.callbacks);
+        repeatCount += other.repeatCount;
+    }
+
+    /**
+     * True if messages can be appended to this request. Not for forms and
+     * selects, whose results belong to one set of fields or items, nor for
+     * large messages, which are laid out once.
+     */
+    boolean canAppend() {
+        return ready && kind != FORM && kind != SELECT && largeMessage == null;
+    }
+
+    /**
+     * Tells JavaScript the id to append select items with, keeping the
+     * callbacks open for the result.
+     */
+    void sendOpened() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("event", "opened");
+            json.put("id", id);
+        } catch (JSONException e) { e.printStackTrace(); }
+        PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+        result.setKeepCallback(true);
+        for (CallbackContext callbackContext : callbacks) {
+            callbackContext.sendPluginResult(result);
+        }
+    }
+
+    /**
+     * Folds a different request of the same kind into this one by appending
+     * its message. Used by the merge overflow policy.
+     */
+    void append(DialogRequest other) {
+        message = message + "\n\n" + other.message;
+        appended = true;
+        callbacks.addAll(other.callbacks);
+        repeatCount += other.repeatCount;
+    }
+
+    /**
+     * Sends the result to every callback context held by this request.
+     *
+     * @param buttonIndex   One-based index of the pressed button, or RESULT_DISMISSED
+     * @param input         Text entered in a prompt, the JSONObject of the
+     *                      values of a form, or the JSONArray of the selected
+     *                      indexes of a select; ignored for alert and confirm
+     */
+    void resolve(int buttonIndex, Object input) {
+        PluginResult result;
+        if (kind == PROMPT) {
+            String text = (String) input;
+            JSONObject json = new JSONObject();
+            try {
+                json.put("buttonIndex", buttonIndex);
+                json.put("input1", text == null || text.trim().length() == 0 ? defaultText : text);
+            } catch (JSONException e) { e.printStackTrace(); }
+            result = new PluginResult(PluginResult.Status.OK, json);
+        } else if (kind == FORM) {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("buttonIndex", buttonIndex);
+                json.put("values", input == null ? FormFields.initialValues(fields) : input);
+            } catch (JSONException e) { e.printStackTrace(); }
+            result = new PluginResult(PluginResult.Status.OK, json);
+        } else if (kind == SELECT) {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("buttonIndex", buttonIndex);
+                json.put("indexes", input == null ? new JSONArray() : input);
+            } catch (JSONException e) { e.printStackTrace(); }
+            result = new PluginResult(PluginResult.Status.OK, json);
+        } else if (kind == CONFIRM) {
+            result = new PluginResult(PluginResult.Status.OK, buttonIndex);
+        } else {
+            // Alerts have a single answer, but lifecycle and timeout are reported.
+            result = new PluginResult(PluginResult.Status.OK, buttonIndex < 0 ? buttonIndex : 0);
+        }
+        for (CallbackContext callbackContext : callbacks) {
+            callbackContext.sendPluginResult(result);
+        }
+        callbacks.clear();
+    }
+}
@@ -0,0 +1,373 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.LOG;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Decides when alert, confirm, prompt and form dialogs are shown, and keeps
+ * track of every one of them until its callbacks are resolved.
+ *
+ * At most maxVisible dialogs are on screen at a time; the rest wait in a
+ * bounded priority queue. Requests identical to one already visible or queued
+ * are merged into it. When the queue is full the overflow policy decides which
+ * request is given up; given up requests are resolved as dismissed, so every
+ * callback context gets an answer.
+ *
+ * The plugin hands activity lifecycle events to the scheduler: visible
+ * dialogs are taken off screen, and they and the queued ones are resolved
+ * with RESULT_LIFECYCLE, before a configuration change, when the activity
+ * goes away or when the page is reset. A request with a timeout is resolved
+ * with RESULT_TIMEOUT if it waits in the queue or stays on screen unanswered
+ * for longer than that.
+ *
+ * All state is confined to the UI thread. submit() and ready() may be called from any thread.
+ */
+final class DialogScheduler {
+
+    private static final String LOG_TAG = "Notification";
+
+    /** What to do with a request that arrives while the queue is full. */
+    enum OverflowPolicy {
+        /** Give up the oldest of the lowest priority queued requests. */
+        DROP_OLDEST,
+        /** Give up the incoming request. */
+        DROP_NEWEST,
+        /**
+         * Append the incoming message to the newest queued request of the same kind,
+         * or give up the incoming request when there is none.
+         */
+        MERGE;
+
+        static OverflowPolicy fromString(String value) {
+            if ("drop-newest".equalsIgnoreCase(value)) {
+                return DROP_NEWEST;
+            } else if ("merge".equalsIgnoreCase(value)) {
+                return MERGE;
+            }
+            return DROP_OLDEST;
+        }
+    }
+
+    /**
+     * Shows a request on the UI thread. The presenter calls finish() once the
+     * dialog has been answered or dismissed.
+     */
+    interface Presenter {
+        void present(DialogRequest request);
+
+        /** The repeat count of a visible request changed. */
+        void update(DialogRequest request);
+    }
+
+    private static final Comparator<DialogRequest> ORDER = new Comparator<DialogRequest>() {
+        public int compare(DialogRequest a, DialogRequest b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+    private final CordovaInterface cordova;
+    private final Presenter presenter;
+    private final NotificationMetrics metrics;
+    private final int capacity;
+    private final int maxVisible;
+    private final OverflowPolicy policy;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PriorityQueue<DialogRequest> queue;
+    private final List<DialogRequest> visible = new ArrayList<DialogRequest>();
+    private long nextSequence;
+
+    DialogScheduler(CordovaInterface cordova, NotificationMetrics metrics, Presenter presenter, int capacity, int maxVisible, OverflowPolicy policy) {
+        this.cordova = cordova;
+        this.metrics = metrics;
+        this.presenter = presenter;
+        this.capacity = Math.max(0, capacity);
+        this.maxVisible = Math.max(1, maxVisible);
+        this.policy = policy;
+        this.queue = new PriorityQueue<DialogRequest>(Math.max(1, this.capacity), ORDER);
+    }
+
+    /**
+     * Hands a request to the scheduler. Never blocks.
+     */
+    void submit(final DialogRequest request) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                enqueue(request);
+            }
+        });
+    }
+
+    /**
+     * Lets a request submitted while its large message was being laid out be
+     * shown once its turn comes. May be called from any thread.
+     */
+    void ready(final DialogRequest request) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                request.ready = true;
+                showNext();
+            }
+        });
+    }
+
+    /**
+     * Resolves a visible request and shows the next queued one.
+     * Must be called on the UI thread.
+     */
+    void finish(DialogRequest request, int buttonIndex, Object input) {
+        if (!visible.remove(request)) {
+            return;
+        }
+        request.dialog = null;
+        resolve(request, buttonIndex, input);
+        showNext();
+    }
+
+    /**
+     * Takes every visible dialog off screen before the activity goes through
+     * a configuration change, so no window is leaked, and resolves all
+     * visible and queued requests with RESULT_LIFECYCLE. The change recreates
+     * the plugin and its scheduler, so nothing would show them again.
+     * UI thread only.
+     */
+    void detach() {
+        abandonAll();
+    }
+
+    /**
+     * The visible or queued request with the given id, or null
+     * once it has been resolved. UI thread only.
+     */
+    DialogRequest find(int id) {
+        for (DialogRequest request : visible) {
+            if (request.id == id) {
+                return request;
+            }
+        }
+        for (DialogRequest request : queue) {
+            if (request.id == id) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The number of visible and queued requests. UI thread only.
+     */
+    int size() {
+        return visible.size() + queue.size();
+    }
+
+    /**
+     * Dismisses every dialog and resolves all visible and queued
+     * requests with RESULT_LIFECYCLE. Used when the activity is destroyed or
+     * the page is reset. UI thread only.
+     */
+    void abandonAll() {
+        List<DialogRequest> requests = new ArrayList<DialogRequest>(visible);
+        requests.addAll(queue);
+        visible.clear();
+        queue.clear();
+        for (DialogRequest request : requests) {
+            takeOffScreen(request);
+            metrics.increment(NotificationMetrics.Counter.DIALOGS_ABANDONED);
+            resolve(request, DialogRequest.RESULT_LIFECYCLE, null);
+        }
+    }
+
+    /**
+     * Resolves a request that was not shown or not answered within its timeout.
+     */
+    private void expire(DialogRequest request) {
+        if (visible.remove(request)) {
+            takeOffScreen(request);
+        } else if (!queue.remove(request)) {
+            return;
+        }
+        request.timeoutTask = null;
+        metrics.increment(NotificationMetrics.Counter.DIALOGS_TIMED_OUT);
+        resolve(request, DialogRequest.RESULT_TIMEOUT, null);
+        showNext();
+    }
+
+    /**
+     * Dismisses the dialog of a request without resolving it.
+     */
+    private void takeOffScreen(DialogRequest request) {
+        if (request.timeoutTask != null) {
+            handler.removeCallbacks(request.timeoutTask);
+            request.timeoutTask = null;
+        }
+        if (request.dialog != null) {
+            request.dialog.dismiss();
+            request.dialog = null;
+        }
+    }
+
+    private void enqueue(DialogRequest request) {
+        request.sequence = nextSequence++;
+        request.pickedUpAt = NotificationMetrics.now();
+        metrics.record(request.action(), NotificationMetrics.Stage.BRIDGE_TO_UI, request.receivedAt, request.pickedUpAt);
+
+        if (cordova.getActivity().isFinishing()) {
+            // No window can be shown any more, answer right away.
+            metrics.increment(NotificationMetrics.Counter.DIALOGS_ABANDONED);
+            resolve(request, DialogRequest.RESULT_LIFECYCLE, null);
+            return;
+        }
+
+        for (DialogRequest shown : visible) {
+            if (shown.isSameAs(request)) {
+                shown.coalesce(request);
+                metrics.increment(NotificationMetrics.Counter.DIALOGS_COALESCED);
+                presenter.update(shown);
+                return;
+            }
+        }
+        for (DialogRequest queued : queue) {
+            if (queued.isSameAs(request)) {
+                queued.coalesce(request);
+                metrics.increment(NotificationMetrics.Counter.DIALOGS_COALESCED);
+                return;
+            }
+        }
+
+        if (visible.size() < maxVisible && queue.isEmpty() && request.ready) {
+            show(request);
+        } else if (queue.size() < capacity || (visible.size() < maxVisible && queue.isEmpty())) {
+            // Behind a request that is not ready yet, or not ready itself:
+            // it waits its turn.
+            addToQueue(request);
+            showNext();
+        } else {
+            overflow(request);
+        }
+    }
+
+    private void overflow(DialogRequest request) {
+        if (policy == OverflowPolicy.MERGE && request.canAppend()) {
+            DialogRequest target = null;
+            for (DialogRequest queued : queue) {
+                if (queued.kind == request.kind && queued.canAppend() && (target == null || queued.sequence > target.sequence)) {
+                    target = queued;
+                }
+            }
+            if (target != null) {
+                target.append(request);
+                metrics.increment(NotificationMetrics.Counter.DIALOGS_COALESCED);
+                return;
+            }
+        }
+
+        // The victim is always the least important request, the policy only
+        // breaks ties between requests of the same priority.
+        DialogRequest victim = request;
+        for (DialogRequest queued : queue) {
+            if (isLessImportant(queued, victim)) {
+                victim = queued;
+            }
+        }
+        if (victim != request) {
+            queue.remove(victim);
+            addToQueue(request);
+        }
+        LOG.d(LOG_TAG, "Dialog queue full, dropping \"" + victim.title + "\"");
+        metrics.increment(NotificationMetrics.Counter.DIALOGS_DROPPED);
+        resolve(victim, DialogRequest.RESULT_DISMISSED, null);
+    }
+
+    private boolean isLessImportant(DialogRequest a, DialogRequest b) {
+        if (a.priority != b.priority) {
+            return a.priority < b.priority;
+        }
+        return policy == OverflowPolicy.DROP_OLDEST ? a.sequence < b.sequence : a.sequence > b.sequence;
+    }
+
+    /**
+     * Queues a request; with a timeout it is given up if it does not make it
+     * on screen in time.
+     */
+    private void addToQueue(DialogRequest request) {
+        queue.add(request);
+        startTimeout(request);
+    }
+
+    /**
+     * Shows queued requests while there is room, in order. Stops at a request
+     * that is not ready, so the ones behind it do not overtake it.
+     */
+    private void showNext() {
+        while (visible.size() < maxVisible && !queue.isEmpty() && queue.peek().ready) {
+            show(queue.poll());
+        }
+    }
+
+    private void show(DialogRequest request) {
+        visible.add(request);
+        presenter.present(request);
+        // The time spent in the queue does not count against the time on screen.
+        startTimeout(request);
+        if (request.shownAt == 0) {
+            request.shownAt = NotificationMetrics.now();
+            metrics.record(request.action(), NotificationMetrics.Stage.UI_TO_SHOWN, request.pickedUpAt, request.shownAt);
+        }
+    }
+
+    private void startTimeout(final DialogRequest request) {
+        if (request.timeoutTask != null) {
+            handler.removeCallbacks(request.timeoutTask);
+            request.timeoutTask = null;
+        }
+        if (request.timeout > 0) {
+            request.timeoutTask = new Runnable() {
+                public void run() {
+                    expire(request);
+                }
+            };
+            handler.postDelayed(request.timeoutTask, request.timeout);
+        }
+    }
+
+    private void resolve(DialogRequest request, int buttonIndex, Object input) {
+        if (request.timeoutTask != null) {
+            handler.removeCallbacks(request.timeoutTask);
+            request.timeoutTask = null;
+        }
+        metrics.add(NotificationMetrics.Counter.RESULTS_SENT, request.callbackCount());
+        request.resolve(buttonIndex, input);
+        long now = NotificationMetrics.now();
+        metrics.record(request.action(), NotificationMetrics.Stage.SHOWN_TO_CALLBACK, request.shownAt, now);
+        metrics.record(request.action(), NotificationMetrics.Stage.TOTAL, request.receivedAt, now);
+    }
+}
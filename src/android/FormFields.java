@@ -0,0 +1,283 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.text.Editable;
+import android.text.InputType;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * The typed fields of a form, shared by the window and overlay renderers.
+ *
+ * Each field is described by a JSON object: name, type (text, number,
+ * password or checkbox), label, hint, value, required, pattern, min, max
+ * and error. The fields are validated natively while they are edited; the
+ * buttons in validateButtons stay disabled until every field is valid.
+ * UI thread only.
+ */
+final class FormFields {
+
+    static final String TEXT = "text";
+    static final String NUMBER = "number";
+    static final String PASSWORD = "password";
+    static final String CHECKBOX = "checkbox";
+
+    /**
+     * One field of the bound form.
+     */
+    private static final class Field {
+        final String name;
+        final String type;
+        final boolean required;
+        final Pattern pattern;
+        final double min;
+        final double max;
+        final String error;
+        final View input;
+
+        Field(JSONObject json, View input) {
+            this.name = json.optString("name");
+            this.type = json.optString("type", TEXT);
+            this.required = json.optBoolean("required", false);
+            this.pattern = DialogRequest.compile(json.optString("pattern", null));
+            this.min = json.optDouble("min", Double.NEGATIVE_INFINITY);
+            this.max = json.optDouble("max", Double.POSITIVE_INFINITY);
+            this.error = json.optString("error", null);
+            this.input = input;
+        }
+
+        boolean isValid() {
+            if (CHECKBOX.equals(type)) {
+                return !required || ((CompoundButton) input).isChecked();
+            }
+            String text = ((EditText) input).getText().toString();
+            if (text.length() == 0) {
+                return !required;
+            }
+            if (pattern != null && !pattern.matcher(text).matches()) {
+                return false;
+            }
+            if (NUMBER.equals(type)) {
+                Double number = parseNumber(text);
+                return number != null && number >= min && number <= max;
+            }
+            return true;
+        }
+
+        Object value() {
+            if (CHECKBOX.equals(type)) {
+                return ((CompoundButton) input).isChecked();
+            }
+            return textValue(type, ((EditText) input).getText().toString());
+        }
+    }
+
+    final LinearLayout view;
+    private final Context context;
+    private final PromptInput.Buttons buttons;
+    private final List<Field> fields = new ArrayList<Field>();
+    private DialogRequest request;
+    private View.OnKeyListener keyListener;
+
+    private final TextWatcher textWatcher = new TextWatcher() {
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        public void afterTextChanged(Editable s) {
+            validate();
+        }
+    };
+
+    private final CompoundButton.OnCheckedChangeListener checkedListener = new CompoundButton.OnCheckedChangeListener() {
+        public void onCheckedChanged(CompoundButton button, boolean checked) {
+            validate();
+        }
+    };
+
+    FormFields(Context context, PromptInput.Buttons buttons) {
+        this.context = context;
+        this.buttons = buttons;
+        this.view = new LinearLayout(context);
+        this.view.setOrientation(LinearLayout.VERTICAL);
+    }
+
+    /**
+     * Sets a key listener on every field built from now on.
+     */
+    void setOnKeyListener(View.OnKeyListener keyListener) {
+        this.keyListener = keyListener;
+    }
+
+    /**
+     * Builds the fields of a form, or hides the view for any other request.
+     * Call once the buttons are bound, they may be disabled right away.
+     */
+    void bind(DialogRequest request) {
+        this.request = null;
+        view.removeAllViews();
+        fields.clear();
+        if (request.kind != DialogRequest.FORM) {
+            view.setVisibility(View.GONE);
+            return;
+        }
+        for (int i = 0; i < request.fields.length(); i++) {
+            JSONObject json = request.fields.optJSONObject(i);
+            if (json != null) {
+                fields.add(new Field(json, createInput(json)));
+            }
+        }
+        view.setVisibility(View.VISIBLE);
+        this.request = request;
+        validate();
+    }
+
+    /**
+     * Returns the values of the form by field name, or null if the request
+     * is not a form.
+     */
+    JSONObject finish() {
+        if (request == null) {
+            return null;
+        }
+        request = null;
+        JSONObject values = new JSONObject();
+        for (Field field : fields) {
+            try {
+                values.put(field.name, field.value());
+            } catch (JSONException e) { e.printStackTrace(); }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values the fields start with, by field name. Sent for a form
+     * resolved without being answered, like on a timeout, so the values are
+     * always keyed by every field name.
+     */
+    static JSONObject initialValues(JSONArray fields) {
+        JSONObject values = new JSONObject();
+        for (int i = 0; i < fields.length(); i++) {
+            JSONObject json = fields.optJSONObject(i);
+            if (json == null) {
+                continue;
+            }
+            String type = json.optString("type", TEXT);
+            try {
+                values.put(json.optString("name"), CHECKBOX.equals(type)
+                        ? json.optBoolean("value", false) : textValue(type, json.optString("value", "")));
+            } catch (JSONException e) { e.printStackTrace(); }
+        }
+        return values;
+    }
+
+    private View createInput(JSONObject json) {
+        String type = json.optString("type", TEXT);
+        String label = json.optString("label", "");
+        if (CHECKBOX.equals(type)) {
+            CheckBox checkBox = new CheckBox(context);
+            checkBox.setText(label);
+            checkBox.setChecked(json.optBoolean("value", false));
+            checkBox.setOnCheckedChangeListener(checkedListener);
+            checkBox.setOnKeyListener(keyListener);
+            view.addView(checkBox);
+            return checkBox;
+        }
+
+        if (label.length() > 0) {
+            TextView labelView = new TextView(context);
+            labelView.setText(label);
+            view.addView(labelView);
+        }
+        EditText editText = new EditText(context);
+        editText.setSingleLine(true);
+        if (NUMBER.equals(type)) {
+            editText.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_DECIMAL
+                    | InputType.TYPE_NUMBER_FLAG_SIGNED);
+        } else if (PASSWORD.equals(type)) {
+            editText.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_PASSWORD);
+        } else {
+            editText.setInputType(InputType.TYPE_CLASS_TEXT);
+        }
+        editText.setHint(json.optString("hint", ""));
+        editText.setText(json.optString("value", ""));
+        editText.addTextChangedListener(textWatcher);
+        editText.setOnKeyListener(keyListener);
+        view.addView(editText);
+        return editText;
+    }
+
+    private void validate() {
+        if (request == null) {
+            return;
+        }
+        boolean valid = true;
+        for (Field field : fields) {
+            boolean fieldValid = field.isValid();
+            valid &= fieldValid;
+            if (field.error != null && field.input instanceof EditText) {
+                // Only complain about what was typed, not about empty fields.
+                boolean typed = ((EditText) field.input).getText().length() > 0;
+                ((EditText) field.input).setError(fieldValid || !typed ? null : field.error);
+            }
+        }
+        for (int buttonIndex : request.validatedButtons) {
+            buttons.setEnabled(buttonIndex, valid);
+        }
+    }
+
+    private static Object textValue(String type, String text) {
+        if (!NUMBER.equals(type)) {
+            return text;
+        }
+        Double number = parseNumber(text);
+        if (number == null) {
+            return JSONObject.NULL;
+        }
+        if (number == Math.rint(number) && Math.abs(number) < Long.MAX_VALUE) {
+            return number.longValue();
+        }
+        return number;
+    }
+
+    private static Double parseNumber(String text) {
+        try {
+            return Double.valueOf(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
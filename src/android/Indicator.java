@@ -0,0 +1,270 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.cordova.CordovaInterface;
+import org.json.JSONObject;
+
+import android.content.DialogInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * State of one kind of progress indicator (the spinner or the progress bar).
+ *
+ * The bridge thread only swaps the wanted session in an AtomicReference:
+ * null means stopped, a session means started. The UI thread then reconciles
+ * the dialog on screen with whatever session is wanted at that moment, so a
+ * stop that arrives before the start has been shown simply means the dialog
+ * is never built. Everything but the AtomicReference is UI thread confined.
+ *
+ * A session may ask to be shown only after a delay, and to stay visible for
+ * a minimum time once shown. Both are handled by posting a delayed
+ * reconcile, never by waiting.
+ */
+final class Indicator {
+
+    /**
+     * One start call. Compared by identity, so starting again with the same
+     * title and message still replaces the dialog.
+     */
+    static final class Session {
+        final String title;
+        final String message;
+        final long receivedAt = NotificationMetrics.now();
+
+        /** Uptime before which the dialog is not built. */
+        final long showAt;
+
+        /** Milliseconds the dialog stays up once shown, even if stopped earlier. */
+        final long minVisible;
+
+        /** UI thread only: when the session was first seen by reconcile, 0 before. */
+        long pickedUpAt;
+
+        Session(String title, String message, JSONObject options) {
+            this.title = title;
+            this.message = message;
+            this.showAt = SystemClock.uptimeMillis() + (options == null ? 0 : Math.max(0, options.optLong("showDelay", 0)));
+            this.minVisible = options == null ? 0 : Math.max(0, options.optLong("minVisible", 0));
+        }
+    }
+
+    /**
+     * Builds and shows the dialog or overlay card for a session on the UI thread.
+     */
+    interface Factory {
+        DialogInterface show(Session session, DialogInterface.OnCancelListener cancelListener);
+    }
+
+    private final CordovaInterface cordova;
+    private final String action;
+    private final NotificationMetrics metrics;
+    private final Factory factory;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final AtomicReference<Session> wanted = new AtomicReference<Session>();
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean(false);
+
+    private Session shownSession;
+    private long shownAt;
+    private DialogInterface dialog;
+
+    /** Session waiting for its show delay, UI thread only. */
+    private Session delayedSession;
+
+    /**
+     * Set by detach() with restore until reattach(): the wanted session is
+     * only recorded, nothing is shown. UI thread only.
+     */
+    private boolean detached;
+
+    private final Runnable reconcile = new Runnable() {
+        public void run() {
+            reconcileScheduled.set(false);
+            reconcile();
+        }
+    };
+
+    private final Runnable delayedReconcile = new Runnable() {
+        public void run() {
+            reconcile();
+        }
+    };
+
+    /**
+     * @param action    Name of the start action, metrics are recorded under it
+     */
+    Indicator(CordovaInterface cordova, String action, NotificationMetrics metrics, Factory factory) {
+        this.cordova = cordova;
+        this.action = action;
+        this.metrics = metrics;
+        this.factory = factory;
+    }
+
+    /**
+     * Replaces any started session with a new one. Never blocks.
+     *
+     * @param options   showDelay and minVisible in milliseconds, may be null
+     */
+    void start(String title, String message, JSONObject options) {
+        wanted.set(new Session(title, message, options));
+        scheduleReconcile();
+    }
+
+    /**
+     * Stops the current session, if any. Never blocks.
+     */
+    void stop() {
+        if (wanted.getAndSet(null) != null) {
+            scheduleReconcile();
+        }
+    }
+
+    /**
+     * Like start(), but leaves it to the caller to run reconcileNow() on the
+     * UI thread. Used to apply several changes in one UI thread pass.
+     */
+    void startDeferred(String title, String message, JSONObject options) {
+        wanted.set(new Session(title, message, options));
+    }
+
+    /**
+     * Like stop(), but leaves it to the caller to run reconcileNow() on the UI thread.
+     */
+    void stopDeferred() {
+        wanted.set(null);
+    }
+
+    /**
+     * Brings the dialog on screen in line with the wanted session. UI thread only.
+     */
+    void reconcileNow() {
+        reconcile();
+    }
+
+    /**
+     * Takes the dialog off screen, e.g. before a configuration change, so no
+     * window is leaked. With restore the session stays started, later starts
+     * and stops are only recorded, and reattach() shows the wanted session
+     * again; otherwise it is stopped. UI thread only.
+     */
+    void detach(boolean restore) {
+        detached = restore;
+        handler.removeCallbacks(delayedReconcile);
+        if (!restore) {
+            wanted.set(null);
+        }
+        if (dialog != null) {
+            dialog.dismiss();
+            dialog = null;
+        }
+        shownSession = null;
+        delayedSession = null;
+    }
+
+    /**
+     * Shows the session wanted now, after detach() kept it. UI thread only.
+     */
+    void reattach() {
+        detached = false;
+        reconcile();
+    }
+
+    /**
+     * True between start() and stop() or a cancel by the user.
+     */
+    boolean isStarted() {
+        return wanted.get() != null;
+    }
+
+    /**
+     * The dialog or overlay card on screen, or null. UI thread only.
+     */
+    DialogInterface getDialog() {
+        return dialog;
+    }
+
+    private void scheduleReconcile() {
+        if (reconcileScheduled.compareAndSet(false, true)) {
+            cordova.getActivity().runOnUiThread(reconcile);
+        }
+    }
+
+    private void reconcileLater(long delay) {
+        handler.removeCallbacks(delayedReconcile);
+        handler.postDelayed(delayedReconcile, delay);
+    }
+
+    private void reconcile() {
+        final Session session = wanted.get();
+        long now = SystemClock.uptimeMillis();
+
+        if (delayedSession != null && delayedSession != session) {
+            // Stopped or replaced before its delay was over: never built.
+            metrics.increment(NotificationMetrics.Counter.INDICATORS_SKIPPED);
+            delayedSession = null;
+        }
+        if (session != null && session.pickedUpAt == 0) {
+            session.pickedUpAt = NotificationMetrics.now();
+            metrics.record(action, NotificationMetrics.Stage.BRIDGE_TO_UI, session.receivedAt, session.pickedUpAt);
+        }
+        if (detached || session == shownSession) {
+            return;
+        }
+
+        if (dialog != null) {
+            long visibleUntil = shownAt + shownSession.minVisible;
+            if (now < visibleUntil) {
+                reconcileLater(visibleUntil - now);
+                return;
+            }
+            dialog.dismiss();
+            dialog = null;
+            shownSession = null;
+        }
+
+        if (session == null) {
+            return;
+        }
+        if (now < session.showAt) {
+            delayedSession = session;
+            reconcileLater(session.showAt - now);
+            return;
+        }
+
+        delayedSession = null;
+        shownSession = session;
+        shownAt = now;
+        dialog = factory.show(session, new DialogInterface.OnCancelListener() {
+            public void onCancel(DialogInterface d) {
+                // Only forget the session if it was not replaced meanwhile.
+                if (wanted.compareAndSet(session, null)) {
+                    shownSession = null;
+                    dialog = null;
+                }
+            }
+        });
+        metrics.record(action, NotificationMetrics.Stage.UI_TO_SHOWN, session.pickedUpAt, NotificationMetrics.now());
+    }
+}
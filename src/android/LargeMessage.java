@@ -0,0 +1,124 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.text.PrecomputedText;
+import android.text.TextDirectionHeuristics;
+import android.text.TextPaint;
+import android.util.TypedValue;
+
+/**
+ * A dialog message too long to be laid out in one go on the UI thread.
+ *
+ * The text is split into chunks at line or word boundaries, each shown as
+ * one row of a list, so only the rows on screen are ever measured. On
+ * Android 9 and up the chunks are also precomputed with PrecomputedText.
+ * Everything is done in the constructor, which is meant to run on a
+ * background thread; the result is immutable.
+ */
+final class LargeMessage {
+
+    /** Target length of a chunk, in characters. */
+    static final int CHUNK_SIZE = 2000;
+
+    /** How far back from the chunk end a line or word break is searched. */
+    private static final int BREAK_SEARCH = 200;
+
+    /** Text size of the chunks, in sp. */
+    static final int TEXT_SIZE_SP = 16;
+
+    final List<CharSequence> chunks = new ArrayList<CharSequence>();
+
+    /** Number of chunks shown at first and added by each "show more". */
+    final int chunksPerPage;
+
+    /** Text size of the chunks, in pixels. */
+    final float textSize;
+
+    /**
+     * Metrics the chunks were precomputed with, to be applied to the rows
+     * before their text is set. A PrecomputedText.Params, or null below
+     * Android 9.
+     */
+    final Object textMetricsParams;
+
+    /**
+     * @param pageSize  Number of characters shown before "show more" is needed
+     */
+    LargeMessage(Context context, String message, int pageSize) {
+        this.textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP,
+                context.getResources().getDisplayMetrics());
+        this.chunksPerPage = Math.max(1, pageSize / CHUNK_SIZE);
+
+        int start = 0;
+        int length = message.length();
+        while (start < length) {
+            int end = breakBefore(message, start, Math.min(length, start + CHUNK_SIZE));
+            chunks.add(message.substring(start, end));
+            // The line break itself would show as an empty line at the top of the next row.
+            start = end < length && message.charAt(end) == '\n' ? end + 1 : end;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            this.textMetricsParams = precompute();
+        } else {
+            this.textMetricsParams = null;
+        }
+    }
+
+    /**
+     * Where to end a chunk starting at start: the last line break, else the
+     * last space, before limit, or limit itself if there is none close enough.
+     */
+    private static int breakBefore(String text, int start, int limit) {
+        if (limit >= text.length()) {
+            return limit;
+        }
+        int floor = Math.max(start + 1, limit - BREAK_SEARCH);
+        int lineBreak = text.lastIndexOf('\n', limit);
+        if (lineBreak >= floor) {
+            return lineBreak;
+        }
+        int space = text.lastIndexOf(' ', limit);
+        if (space >= floor) {
+            return space + 1;
+        }
+        // Do not split a surrogate pair.
+        return Character.isHighSurrogate(text.charAt(limit - 1)) ? limit - 1 : limit;
+    }
+
+    @TargetApi(Build.VERSION_CODES.P)
+    private Object precompute() {
+        TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(textSize);
+        PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint)
+                .setTextDirection(TextDirectionHeuristics.LOCALE)
+                .build();
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.set(i, PrecomputedText.create(chunks.get(i), params));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.text.PrecomputedText;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * Shows a LargeMessage in a list, one row per chunk, so only the rows on
+ * screen are laid out. A page of chunks is shown at first; a "show more"
+ * button at the end of the list adds the next page. Shared by the window
+ * and overlay renderers. UI thread only.
+ */
+final class LargeMessageView extends BaseAdapter {
+
+    /** Height of the list, as a share of the screen height. */
+    private static final float HEIGHT = 0.5f;
+
+    final ListView view;
+    private final Context context;
+    private final Button showMore;
+    private LargeMessage message;
+    private int shownChunks;
+
+    LargeMessageView(Context context) {
+        this.context = context;
+        this.view = new ListView(context);
+        this.view.setDivider(null);
+        this.view.setLayoutParams(new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                (int) (context.getResources().getDisplayMetrics().heightPixels * HEIGHT)));
+
+        this.showMore = new Button(context);
+        this.showMore.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                showMore();
+            }
+        });
+        // Footers must be added before the adapter on old versions.
+        this.view.addFooterView(this.showMore);
+        this.view.setAdapter(this);
+        this.view.setVisibility(View.GONE);
+    }
+
+    /**
+     * Shows the first page of a large message, or hides the list if the
+     * request has none.
+     */
+    void bind(DialogRequest request) {
+        if (request.largeMessage == null) {
+            clear();
+            return;
+        }
+        message = request.largeMessage;
+        shownChunks = Math.min(message.chunksPerPage, message.chunks.size());
+        updateShowMore();
+        notifyDataSetChanged();
+        view.setSelection(0);
+        view.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Hides the list and lets go of the message it showed.
+     */
+    void clear() {
+        message = null;
+        shownChunks = 0;
+        notifyDataSetChanged();
+        view.setVisibility(View.GONE);
+    }
+
+    private void showMore() {
+        if (message == null) {
+            return;
+        }
+        shownChunks = Math.min(shownChunks + message.chunksPerPage, message.chunks.size());
+        updateShowMore();
+        notifyDataSetChanged();
+    }
+
+    private void updateShowMore() {
+        int total = message.chunks.size();
+        if (shownChunks < total) {
+            showMore.setText("Show more (" + (shownChunks * 100 / total) + "%)");
+            showMore.setVisibility(View.VISIBLE);
+        } else {
+            showMore.setVisibility(View.GONE);
+        }
+    }
+
+    public int getCount() {
+        return shownChunks;
+    }
+
+    public Object getItem(int position) {
+        return message.chunks.get(position);
+    }
+
+    public long getItemId(int position) {
+        return position;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = (TextView) convertView;
+        if (row == null) {
+            row = new TextView(context);
+            row.setTextSize(TypedValue.COMPLEX_UNIT_PX, message.textSize);
+            Notification.setLocaleTextDirection(row);
+        }
+        if (message.textMetricsParams != null) {
+            setTextMetricsParams(row, message.textMetricsParams);
+        }
+        row.setText(message.chunks.get(position));
+        return row;
+    }
+
+    /** A precomputed text can only be set on a view with the same metrics. */
+    @TargetApi(Build.VERSION_CODES.P)
+    private static void setTextMetricsParams(TextView row, Object params) {
+        row.setTextMetricsParams((PrecomputedText.Params) params);
+    }
+}
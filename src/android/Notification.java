@@ -18,23 +18,24 @@
 */
 package org.apache.cordova.dialogs;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
-import org.apache.cordova.PluginResult;
+import org.apache.cordova.LOG;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
-import android.app.AlertDialog.Builder;
 import android.app.ProgressDialog;
+import android.content.Context;
 import android.content.DialogInterface;
-import android.media.Ringtone;
-import android.media.RingtoneManager;
-import android.net.Uri;
-import android.widget.EditText;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.widget.TextView;
 
 
@@ -48,9 +49,29 @@ import android.widget.TextView;
  */
 public class Notification extends CordovaPlugin {
 
+    private static final String LOG_TAG = "Notification";
+
     public int confirmResult = -1;
-    public ProgressDialog spinnerDialog = null;
-    public ProgressDialog progressDialog = null;
+
+    private Indicator spinner;
+    private Indicator progress;
+    private ProgressCoalescer progressCoalescer;
+    private final ProgressAggregator progressTasks = new ProgressAggregator();
+    private ProgressNotifier progressNotifier;
+    private boolean backgroundProgress;
+
+    /** Title and background option of the progress dialog, set by progressStart. */
+    private volatile String progressTitle;
+    private volatile boolean progressInBackground;
+    private DialogScheduler dialogScheduler;
+    private DialogPool dialogPool;
+    private OverlayRenderer overlay;
+    private boolean useOverlay;
+    private BeepEngine beepEngine;
+    private boolean fireAndForget;
+    private int largeMessageThreshold;
+    private int messagePageSize;
+    private final NotificationMetrics metrics = new NotificationMetrics();
 
     /**
      * Constructor.
@@ -58,6 +79,357 @@ public class Notification extends CordovaPlugin {
     public Notification() {
     }
 
+    @Override
+    protected void pluginInitialize() {
+        long initializeStart = NotificationMetrics.now();
+        final Notification notification = this;
+        final CordovaInterface cordova = this.cordova;
+        this.fireAndForget = preferences.getBoolean("NotificationFireAndForget", false);
+        this.largeMessageThreshold = preferences.getInteger("DialogLargeMessageThreshold", 8192);
+        this.messagePageSize = preferences.getInteger("DialogMessagePageSize", 65536);
+        this.backgroundProgress = preferences.getBoolean("ProgressBackgroundNotification", false);
+        this.progressNotifier = new ProgressNotifier(cordova.getActivity().getApplicationContext(), this.metrics,
+                preferences.getInteger("ProgressNotificationInterval", 1000));
+        this.progressNotifier.removeLeftover();
+        this.dialogPool = new DialogPool(cordova, preferences.getBoolean("DialogPooling", false));
+        this.overlay = new OverlayRenderer(cordova);
+        this.useOverlay = "overlay".equalsIgnoreCase(preferences.getString("DialogRenderer", "window"));
+        String beepSound = preferences.getString("BeepSound", "");
+        this.beepEngine = new BeepEngine(cordova.getActivity().getApplicationContext(), beepSound.length() > 0 ? beepSound : null);
+        this.spinner = new Indicator(cordova, "activityStart", this.metrics, new Indicator.Factory() {
+            public DialogInterface show(Indicator.Session session, DialogInterface.OnCancelListener cancelListener) {
+                if (notification.useOverlay) {
+                    return notification.overlay.showIndicator(session, false, cancelListener);
+                }
+                ProgressDialog dialog = notification.dialogPool.progressDialog(ProgressDialog.STYLE_SPINNER);
+                dialog.setTitle(session.title);
+                dialog.setMessage(session.message);
+                dialog.setCancelable(true);
+                dialog.setIndeterminate(true);
+                dialog.setOnCancelListener(cancelListener);
+                dialog.show();
+                return dialog;
+            }
+        });
+        this.progress = new Indicator(cordova, "progressStart", this.metrics, new Indicator.Factory() {
+            public DialogInterface show(Indicator.Session session, DialogInterface.OnCancelListener cancelListener) {
+                DialogInterface shown;
+                if (notification.useOverlay) {
+                    shown = notification.overlay.showIndicator(session, true, cancelListener);
+                } else {
+                    ProgressDialog dialog = notification.dialogPool.progressDialog(ProgressDialog.STYLE_HORIZONTAL);
+                    dialog.setTitle(session.title);
+                    dialog.setMessage(session.message);
+                    dialog.setCancelable(true);
+                    dialog.setMax(100);
+                    dialog.setProgress(0);
+                    dialog.setOnCancelListener(cancelListener);
+                    dialog.show();
+                    shown = dialog;
+                }
+                // Tasks may have progressed while the dialog was delayed or detached.
+                notification.showProgress(shown, notification.progressTasks.percent());
+                return shown;
+            }
+        });
+        this.progressCoalescer = new ProgressCoalescer(cordova, this.metrics, preferences.getInteger("ProgressRenderInterval", 100),
+                new ProgressCoalescer.Target() {
+            public void apply(int value) {
+                notification.showProgress(notification.progress.getDialog(), value);
+            }
+        });
+        this.dialogScheduler = new DialogScheduler(this.cordova, this.metrics, new DialogScheduler.Presenter() {
+            public void present(DialogRequest request) {
+                if (notification.useOverlay) {
+                    request.dialog = notification.overlay.present(request, notification.dialogScheduler);
+                } else {
+                    request.dialog = notification.dialogPool.present(request, notification.dialogScheduler);
+                }
+            }
+
+            public void update(DialogRequest request) {
+                if (notification.useOverlay) {
+                    notification.overlay.update(request);
+                } else if (request.dialog != null) {
+                    ((AlertDialog) request.dialog).setTitle(request.getDisplayTitle());
+                }
+            }
+        }, preferences.getInteger("DialogQueueSize", 16),
+           preferences.getInteger("DialogMaxVisible", 1),
+           DialogScheduler.OverflowPolicy.fromString(preferences.getString("DialogOverflowPolicy", "drop-oldest")));
+
+        if (preferences.getBoolean("DialogPrewarm", false)) {
+            this.prewarm();
+        }
+        long initializeTime = NotificationMetrics.now() - initializeStart;
+        this.metrics.recordStartup("initialize", initializeTime);
+        LOG.d(LOG_TAG, "Plugin initialized in " + initializeTime / 1000 + " us");
+    }
+
+    /** Classes loaded ahead of the first dialog by prewarm(). */
+    private static final String[] PREWARM_CLASSES = {
+        "android.app.AlertDialog",
+        "android.app.ProgressDialog",
+        "android.widget.EditText",
+        "android.widget.ProgressBar",
+        "org.apache.cordova.dialogs.DialogRequest",
+        "org.apache.cordova.dialogs.DialogPool$Entry",
+        "org.apache.cordova.dialogs.OverlayRenderer$Card",
+        "org.apache.cordova.dialogs.PromptInput",
+    };
+
+    /**
+     * Moves the one-time costs of the first dialog and beep out of the way:
+     * classes are loaded and the beep sound decoded on background threads,
+     * and the dialogs of the active renderer are built on the UI thread once
+     * it is idle, so app launch is not delayed. Each step is timed into the
+     * startup metrics.
+     */
+    private void prewarm() {
+        final NotificationMetrics metrics = this.metrics;
+        this.beepEngine.prepareAsync();
+        this.cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                long start = NotificationMetrics.now();
+                ClassLoader loader = Notification.class.getClassLoader();
+                for (String name : PREWARM_CLASSES) {
+                    try {
+                        Class.forName(name, true, loader);
+                    } catch (ClassNotFoundException e) {
+                        LOG.w(LOG_TAG, "Cannot prewarm " + name);
+                    }
+                }
+                long time = NotificationMetrics.now() - start;
+                metrics.recordStartup("prewarmClasses", time);
+                LOG.d(LOG_TAG, "Prewarmed classes in " + time / 1000 + " us");
+            }
+        });
+
+        final Notification notification = this;
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    public boolean queueIdle() {
+                        if (notification.cordova.getActivity().isFinishing()) {
+                            return false;
+                        }
+                        long start = NotificationMetrics.now();
+                        if (notification.useOverlay) {
+                            notification.overlay.warm();
+                        } else {
+                            notification.dialogPool.warm();
+                        }
+                        long time = NotificationMetrics.now() - start;
+                        metrics.recordStartup("prewarmDialogs", time);
+                        LOG.d(LOG_TAG, "Prewarmed dialogs on the UI thread in " + time / 1000 + " us");
+                        return false;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * One action of the plugin. Decodes its typed arguments and calls the
+     * matching method. Void actions complete synchronously and have no result
+     * of their own; everything else resolves the callback context itself.
+     */
+    private static abstract class Action {
+        final boolean isVoid;
+
+        Action(boolean isVoid) {
+            this.isVoid = isVoid;
+        }
+
+        abstract void run(Notification notification, JSONArray args, CallbackContext callbackContext) throws JSONException;
+
+        /**
+         * Completes the call without running it, because the activity is
+         * finishing and no window can be shown any more.
+         */
+        void reject(Notification notification, JSONArray args, CallbackContext callbackContext) throws JSONException {
+            callbackContext.error(ACTIVITY_FINISHING);
+        }
+
+        /**
+         * Records the action as part of a batch, to be applied by the batch's UI
+         * thread pass. Returns false if the action cannot be batched.
+         */
+        boolean defer(Notification notification, JSONArray args) throws JSONException {
+            return false;
+        }
+    }
+
+    /**
+     * A dialog action. The dialog scheduler answers dialogs submitted while
+     * the activity is finishing with RESULT_LIFECYCLE, so they are run as usual.
+     */
+    private static abstract class DialogAction extends Action {
+        DialogAction() {
+            super(false);
+        }
+
+        void reject(Notification notification, JSONArray args, CallbackContext callbackContext) throws JSONException {
+            run(notification, args, callbackContext);
+        }
+    }
+
+    /** Error sent for calls that arrive while the activity is finishing. */
+    private static final String ACTIVITY_FINISHING = "Activity is finishing";
+
+    /** Actions by name, built once. */
+    private static final Map<String, Action> ACTIONS = new HashMap<String, Action>();
+
+    static {
+        ACTIONS.put("beep", new Action(false) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.beep(args.getLong(0), args.optLong(1, 0), callbackContext);
+            }
+
+            boolean defer(Notification n, JSONArray args) throws JSONException {
+                n.beep(args.getLong(0), args.optLong(1, 0), null);
+                return true;
+            }
+        });
+        ACTIONS.put("beepStop", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) {
+                n.beepStop();
+            }
+
+            boolean defer(Notification n, JSONArray args) {
+                n.beepStop();
+                return true;
+            }
+        });
+        ACTIONS.put("batch", new Action(false) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.batch(args.getJSONArray(0), callbackContext);
+            }
+        });
+        ACTIONS.put("alert", new DialogAction() {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.alert(args.getString(0), args.getString(1), args.getString(2), args.optJSONObject(3), callbackContext);
+            }
+        });
+        ACTIONS.put("confirm", new DialogAction() {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.confirm(args.getString(0), args.getString(1), args.getJSONArray(2), args.optJSONObject(3), callbackContext);
+            }
+        });
+        ACTIONS.put("prompt", new DialogAction() {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.prompt(args.getString(0), args.getString(1), args.getJSONArray(2), args.getString(3), args.optJSONObject(4), callbackContext);
+            }
+        });
+        ACTIONS.put("form", new DialogAction() {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.form(args.getString(0), args.getString(1), args.getJSONArray(2), args.getJSONArray(3), args.optJSONObject(4), callbackContext);
+            }
+        });
+        ACTIONS.put("select", new DialogAction() {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.select(args.getString(0), args.getString(1), args.getJSONArray(2), args.getJSONArray(3), args.optJSONObject(4), callbackContext);
+            }
+        });
+        ACTIONS.put("selectAppend", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.selectAppend(args.getInt(0), args.getJSONArray(1));
+            }
+        });
+        ACTIONS.put("notify", new Action(false) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.notice(args.getString(0), args.optJSONObject(1), callbackContext);
+            }
+
+            boolean defer(Notification n, JSONArray args) throws JSONException {
+                n.notice(args.getString(0), args.optJSONObject(1), null);
+                return true;
+            }
+        });
+        ACTIONS.put("getMetrics", new Action(false) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.getMetrics(callbackContext);
+            }
+        });
+        ACTIONS.put("resetMetrics", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) {
+                n.metrics.reset();
+            }
+        });
+        ACTIONS.put("activityStart", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.activityStart(args.getString(0), args.getString(1), args.optJSONObject(2));
+            }
+
+            boolean defer(Notification n, JSONArray args) throws JSONException {
+                n.spinner.startDeferred(args.getString(0), args.getString(1), args.optJSONObject(2));
+                return true;
+            }
+        });
+        ACTIONS.put("activityStop", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) {
+                n.activityStop();
+            }
+
+            boolean defer(Notification n, JSONArray args) {
+                n.spinner.stopDeferred();
+                return true;
+            }
+        });
+        ACTIONS.put("progressStart", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.progressStart(args.getString(0), args.getString(1), args.optJSONObject(2));
+            }
+
+            boolean defer(Notification n, JSONArray args) throws JSONException {
+                n.startProgressTask(args.getString(0), args.getString(1), args.optJSONObject(2), true);
+                return true;
+            }
+        });
+        ACTIONS.put("progressValue", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.progressValue(args.getInt(0));
+            }
+
+            boolean defer(Notification n, JSONArray args) throws JSONException {
+                n.progressTasks.value(args.getInt(0));
+                n.progressChanged(true);
+                return true;
+            }
+        });
+        ACTIONS.put("progressUpdate", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                n.progressUpdate(args.getJSONObject(0));
+            }
+
+            boolean defer(Notification n, JSONArray args) throws JSONException {
+                n.progressTasks.update(args.getJSONObject(0));
+                n.progressChanged(true);
+                return true;
+            }
+        });
+        ACTIONS.put("progressStop", new Action(true) {
+            void run(Notification n, JSONArray args, CallbackContext callbackContext) throws JSONException {
+                if (args.length() > 0) {
+                    n.progressStop(args.getInt(0));
+                } else {
+                    n.progressStop();
+                }
+            }
+
+            boolean defer(Notification n, JSONArray args) throws JSONException {
+                if (args.length() > 0 && !n.progressTasks.complete(args.getInt(0))) {
+                    n.progressChanged(true);
+                    return true;
+                }
+                n.progressTasks.clear();
+                n.progressNotifier.cancel();
+                n.progress.stopDeferred();
+                return true;
+            }
+        });
+    }
+
     /**
      * Executes the request and returns PluginResult.
      *
@@ -67,51 +439,116 @@ public class Notification extends CordovaPlugin {
      * @return                  True when the action was valid, false otherwise.
      */
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        long receivedAt = NotificationMetrics.now();
+        Action handler = ACTIONS.get(action);
+        if (handler == null) {
+            return false;
+        }
+
     	/*
     	 * Don't run any of these if the current activity is finishing
     	 * in order to avoid android.view.WindowManager$BadTokenException
-    	 * crashing the app. Just return true here since false should only
-    	 * be returned in the event of an invalid action.
+    	 * crashing the app. The call is still answered, so its callbacks
+    	 * are not left pending.
     	 */
-    	if(this.cordova.getActivity().isFinishing()) return true;
-    	
-        if (action.equals("beep")) {
-            this.beep(args.getLong(0));
-        }
-        else if (action.equals("alert")) {
-            this.alert(args.getString(0), args.getString(1), args.getString(2), callbackContext);
+        if (this.cordova.getActivity().isFinishing()) {
+            if (handler.isVoid && this.fireAndForget) {
+                // Nobody listens for the error either.
+                this.metrics.increment(NotificationMetrics.Counter.RESULTS_SUPPRESSED);
+            } else {
+                handler.reject(this, args, callbackContext);
+            }
+            this.metrics.recordCall(action, receivedAt);
             return true;
         }
-        else if (action.equals("confirm")) {
-            this.confirm(args.getString(0), args.getString(1), args.getJSONArray(2), callbackContext);
-            return true;
+        handler.run(this, args, callbackContext);
+
+        // Only the void actions are completed here, and in fire and forget
+        // mode not even those: the JS side passes no callbacks for them.
+        if (handler.isVoid) {
+            if (this.fireAndForget) {
+                this.metrics.increment(NotificationMetrics.Counter.RESULTS_SUPPRESSED);
+            } else {
+                callbackContext.success();
+                this.metrics.increment(NotificationMetrics.Counter.RESULTS_SENT);
+            }
         }
-        else if (action.equals("prompt")) {
-            this.prompt(args.getString(0), args.getString(1), args.getJSONArray(2), args.getString(3), callbackContext);
-            return true;
+        this.metrics.recordCall(action, receivedAt);
+        return true;
+    }
+
+    /**
+     * Takes the dialogs off screen before a configuration change recreates the
+     * activity, so their windows are not leaked, and answers them and the
+     * queued ones with -1.
+     * When the app goes to the background, a progress dialog started with the
+     * background option is handed over to a system notification instead.
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        if (this.dialogScheduler == null) {
+            return;
         }
-        else if (action.equals("activityStart")) {
-            this.activityStart(args.getString(0), args.getString(1));
+        if (this.cordova.getActivity().isChangingConfigurations()) {
+            this.dialogScheduler.detach();
+            this.spinner.detach(false);
+            this.progress.detach(false);
+        } else if (this.progressInBackground && this.progress.isStarted()
+                && !this.cordova.getActivity().isFinishing() && ProgressNotifier.isSupported()) {
+            // Nobody sees the dialog in the background: a notification shows
+            // the progress instead, until onResume takes it back.
+            this.progress.detach(true);
+            this.progressNotifier.show(this.progressTitle, this.progressText(), this.progressTasks.percent());
         }
-        else if (action.equals("activityStop")) {
-            this.activityStop();
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        if (this.progressNotifier != null) {
+            this.progressNotifier.cancel();
         }
-        else if (action.equals("progressStart")) {
-            this.progressStart(args.getString(0), args.getString(1));
+        if (this.dialogScheduler != null) {
+            // Takes back a progress dialog handed over to the notification.
+            this.progress.reattach();
         }
-        else if (action.equals("progressValue")) {
-            this.progressValue(args.getInt(0));
+    }
+
+    /**
+     * The page is going away: answer every dialog with -1 and stop the
+     * indicators and beeps it started.
+     */
+    @Override
+    public void onReset() {
+        if (this.dialogScheduler != null) {
+            this.dialogScheduler.abandonAll();
+            this.spinner.detach(false);
+            this.progress.detach(false);
+            this.progressNotifier.cancel();
+            this.beepEngine.cancel();
         }
-        else if (action.equals("progressStop")) {
-            this.progressStop();
+    }
+
+    /**
+     * Answer every dialog with -1, then release the pooled dialogs and the
+     * overlay, they hold on to the activity, and the beep sound.
+     */
+    @Override
+    public void onDestroy() {
+        if (this.dialogScheduler != null) {
+            this.dialogScheduler.abandonAll();
+            this.spinner.detach(false);
+            this.progress.detach(false);
+            this.progressNotifier.cancel();
         }
-        else {
-            return false;
+        if (this.dialogPool != null) {
+            this.dialogPool.clear();
+        }
+        if (this.overlay != null) {
+            this.overlay.clear();
+        }
+        if (this.beepEngine != null) {
+            this.beepEngine.release();
         }
-
-        // Only alert and confirm are async.
-        callbackContext.success();
-        return true;
     }
 
     //--------------------------------------------------------------------------
@@ -124,27 +561,26 @@ public class Notification extends CordovaPlugin {
      * @param count     Number of times to play notification
      */
     public void beep(final long count) {
-        cordova.getThreadPool().execute(new Runnable() {
-            public void run() {
-                Uri ringtone = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-                Ringtone notification = RingtoneManager.getRingtone(cordova.getActivity().getBaseContext(), ringtone);
-
-                // If phone is not set to silent mode
-                if (notification != null) {
-                    for (long i = 0; i < count; ++i) {
-                        notification.play();
-                        long timeout = 5000;
-                        while (notification.isPlaying() && (timeout > 0)) {
-                            timeout = timeout - 100;
-                            try {
-                                Thread.sleep(100);
-                            } catch (InterruptedException e) {
-                            }
-                        }
-                    }
-                }
-            }
-        });
+        this.beep(count, 0, null);
+    }
+
+    /**
+     * Beep plays the configured beep sound, or the default notification ringtone.
+     * Repeats are scheduled, the calling thread is never blocked.
+     *
+     * @param count             Number of times to play notification
+     * @param interval          Milliseconds between two beeps, 0 for the length of the sound
+     * @param callbackContext   Receives the number of beeps played when done, may be null
+     */
+    public void beep(final long count, final long interval, final CallbackContext callbackContext) {
+        this.beepEngine.beep(count, interval, callbackContext);
+    }
+
+    /**
+     * Stop the beeps in progress.
+     */
+    public void beepStop() {
+        this.beepEngine.cancel();
     }
 
     /**
@@ -154,35 +590,22 @@ public class Notification extends CordovaPlugin {
      * @param buttonLabel       The label of the button
      * @param callbackContext   The callback context
      */
-    public synchronized void alert(final String message, final String title, final String buttonLabel, final CallbackContext callbackContext) {
-    	final CordovaInterface cordova = this.cordova;
-
-        Runnable runnable = new Runnable() {
-            public void run() {
-
-                AlertDialog.Builder dlg = createDialog(cordova); // new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
-                dlg.setMessage(message);
-                dlg.setTitle(title);
-                dlg.setCancelable(true);
-                dlg.setPositiveButton(buttonLabel,
-                        new AlertDialog.OnClickListener() {
-                            public void onClick(DialogInterface dialog, int which) {
-                                dialog.dismiss();
-                                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
-                            }
-                        });
-                dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
-                    public void onCancel(DialogInterface dialog)
-                    {
-                        dialog.dismiss();
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
-                    }
-                });
+    public void alert(final String message, final String title, final String buttonLabel, final CallbackContext callbackContext) {
+        this.alert(message, title, buttonLabel, null, callbackContext);
+    }
 
-                changeTextDirection(dlg);
-            };
-        };
-        this.cordova.getActivity().runOnUiThread(runnable);
+    /**
+     * Queues a native Android alert with given Strings
+     * @param message           The message the alert should display
+     * @param title             The title of the alert
+     * @param buttonLabel       The label of the button
+     * @param options           Scheduling options (priority), may be null
+     * @param callbackContext   The callback context
+     */
+    public void alert(final String message, final String title, final String buttonLabel, final JSONObject options, final CallbackContext callbackContext) {
+        JSONArray buttonLabels = new JSONArray();
+        buttonLabels.put(buttonLabel);
+        this.submitDialog(new DialogRequest(DialogRequest.ALERT, message, title, buttonLabels, null, options, callbackContext));
     }
 
     /**
@@ -195,66 +618,21 @@ public class Notification extends CordovaPlugin {
      * @param buttonLabels      A comma separated list of button labels (Up to 3 buttons)
      * @param callbackContext   The callback context.
      */
-    public synchronized void confirm(final String message, final String title, final JSONArray buttonLabels, final CallbackContext callbackContext) {
-    	final CordovaInterface cordova = this.cordova;
-
-        Runnable runnable = new Runnable() {
-            public void run() {
-                AlertDialog.Builder dlg = createDialog(cordova); // new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
-                dlg.setMessage(message);
-                dlg.setTitle(title);
-                dlg.setCancelable(true);
-
-                // First button
-                if (buttonLabels.length() > 0) {
-                    try {
-                        dlg.setNegativeButton(buttonLabels.getString(0),
-                            new AlertDialog.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int which) {
-                                    dialog.dismiss();
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 1));
-                                }
-                            });
-                    } catch (JSONException e) { }
-                }
-
-                // Second button
-                if (buttonLabels.length() > 1) {
-                    try {
-                        dlg.setNeutralButton(buttonLabels.getString(1),
-                            new AlertDialog.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int which) {
-                                    dialog.dismiss();
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 2));
-                                }
-                            });
-                    } catch (JSONException e) { }
-                }
-
-                // Third button
-                if (buttonLabels.length() > 2) {
-                    try {
-                        dlg.setPositiveButton(buttonLabels.getString(2),
-                            new AlertDialog.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int which) {
-                                  dialog.dismiss();
-                                  callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 3));
-                                }
-                            });
-                    } catch (JSONException e) { }
-                }
-                dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
-                    public void onCancel(DialogInterface dialog)
-                    {
-                        dialog.dismiss();
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, 0));
-                    }
-                });
+    public void confirm(final String message, final String title, final JSONArray buttonLabels, final CallbackContext callbackContext) {
+        this.confirm(message, title, buttonLabels, null, callbackContext);
+    }
 
-                changeTextDirection(dlg);
-            };
-        };
-        this.cordova.getActivity().runOnUiThread(runnable);
+    /**
+     * Queues a native Android confirm dialog with given title, message, buttons.
+     *
+     * @param message           The message the dialog should display
+     * @param title             The title of the dialog
+     * @param buttonLabels      A comma separated list of button labels (Up to 3 buttons)
+     * @param options           Scheduling options (priority), may be null
+     * @param callbackContext   The callback context.
+     */
+    public void confirm(final String message, final String title, final JSONArray buttonLabels, final JSONObject options, final CallbackContext callbackContext) {
+        this.submitDialog(new DialogRequest(DialogRequest.CONFIRM, message, title, buttonLabels, null, options, callbackContext));
     }
 
     /**
@@ -269,88 +647,120 @@ public class Notification extends CordovaPlugin {
      * @param buttonLabels      A comma separated list of button labels (Up to 3 buttons)
      * @param callbackContext   The callback context.
      */
-    public synchronized void prompt(final String message, final String title, final JSONArray buttonLabels, final String defaultText, final CallbackContext callbackContext) {
-  	
-        final CordovaInterface cordova = this.cordova;
-       
-        Runnable runnable = new Runnable() {
-            public void run() {
-                final EditText promptInput =  new EditText(cordova.getActivity());
-                promptInput.setHint(defaultText);
-                AlertDialog.Builder dlg = createDialog(cordova); // new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
-                dlg.setMessage(message);
-                dlg.setTitle(title);
-                dlg.setCancelable(true);
-                
-                dlg.setView(promptInput);
-                
-                final JSONObject result = new JSONObject();
-                
-                // First button
-                if (buttonLabels.length() > 0) {
-                    try {
-                        dlg.setNegativeButton(buttonLabels.getString(0),
-                            new AlertDialog.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int which) {
-                                    dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",1);
-                                        result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());											
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
-                                }
-                            });
-                    } catch (JSONException e) { }
-                }
+    public void prompt(final String message, final String title, final JSONArray buttonLabels, final String defaultText, final CallbackContext callbackContext) {
+        this.prompt(message, title, buttonLabels, defaultText, null, callbackContext);
+    }
 
-                // Second button
-                if (buttonLabels.length() > 1) {
-                    try {
-                        dlg.setNeutralButton(buttonLabels.getString(1),
-                            new AlertDialog.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int which) {
-                                    dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",2);
-                                        result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
-                                }
-                            });
-                    } catch (JSONException e) { }
-                }
+    /**
+     * Queues a native Android prompt dialog with given title, message, buttons.
+     *
+     * @param message           The message the dialog should display
+     * @param title             The title of the dialog
+     * @param buttonLabels      A comma separated list of button labels (Up to 3 buttons)
+     * @param defaultText       The hint of the text box, also returned when nothing was entered
+     * @param options           Scheduling options (priority), may be null
+     * @param callbackContext   The callback context.
+     */
+    public void prompt(final String message, final String title, final JSONArray buttonLabels, final String defaultText, final JSONObject options, final CallbackContext callbackContext) {
+        this.submitDialog(new DialogRequest(DialogRequest.PROMPT, message, title, buttonLabels, defaultText, options, callbackContext));
+    }
 
-                // Third button
-                if (buttonLabels.length() > 2) {
-                    try {
-                        dlg.setPositiveButton(buttonLabels.getString(2),
-                            new AlertDialog.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int which) {
-                                    dialog.dismiss();
-                                    try {
-                                        result.put("buttonIndex",3);
-                                        result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());
-                                    } catch (JSONException e) { e.printStackTrace(); }
-                                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
-                                }
-                            });
-                    } catch (JSONException e) { }
+    /**
+     * Queues a native Android form dialog with several typed fields. All values
+     * are returned in one result: { buttonIndex, values: { name: value } }.
+     *
+     * @param message           The message the dialog should display
+     * @param title             The title of the dialog
+     * @param fields            The fields: name, type (text, number, password or checkbox),
+     *                          label, hint, value, and validation (required, pattern, min, max, error)
+     * @param buttonLabels      A comma separated list of button labels (Up to 3 buttons)
+     * @param options           Scheduling and validation options (priority, validateButtons), may be null
+     * @param callbackContext   The callback context.
+     */
+    public void form(final String message, final String title, final JSONArray fields, final JSONArray buttonLabels, final JSONObject options, final CallbackContext callbackContext) {
+        this.submitDialog(new DialogRequest(DialogRequest.FORM, message, title, buttonLabels, null, fields, options, callbackContext));
+    }
+
+    /**
+     * Queues a native Android select dialog, single or multiple choice, over a
+     * list that only builds views for the visible items. JavaScript receives
+     * { event: "opened", id } right away and can append more items with
+     * selectAppend(id, items) while the dialog is queued or open. The selected
+     * indexes are returned in one result: { buttonIndex, indexes }.
+     *
+     * @param message           The message the dialog should display
+     * @param title             The title of the dialog
+     * @param items             Labels of the first items, may be empty
+     * @param buttonLabels      A comma separated list of button labels (Up to 3 buttons)
+     * @param options           multiple, filter, selected (indexes) and scheduling options, may be null
+     * @param callbackContext   The callback context.
+     */
+    public void select(final String message, final String title, final JSONArray items, final JSONArray buttonLabels, final JSONObject options, final CallbackContext callbackContext) {
+        DialogRequest request = new DialogRequest(DialogRequest.SELECT, message, title, buttonLabels, null, items, options, callbackContext);
+        request.sendOpened();
+        this.submitDialog(request);
+    }
+
+    /**
+     * Appends items to a select dialog. Ignored once the dialog was answered.
+     *
+     * @param id                The id sent with the opened event
+     * @param items             Labels of the items
+     */
+    public void selectAppend(final int id, final JSONArray items) {
+        final DialogScheduler dialogScheduler = this.dialogScheduler;
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                DialogRequest request = dialogScheduler.find(id);
+                if (request != null && request.items != null) {
+                    request.items.append(items);
                 }
-                dlg.setOnCancelListener(new AlertDialog.OnCancelListener() {
-                    public void onCancel(DialogInterface dialog){
-                        dialog.dismiss();
-                        try {
-                            result.put("buttonIndex",0);
-                            result.put("input1", promptInput.getText().toString().trim().length()==0 ? defaultText : promptInput.getText());
-                        } catch (JSONException e) { e.printStackTrace(); }
-                        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
-                    }
-                });
+            }
+        });
+    }
 
-                changeTextDirection(dlg);
-            };
-        };
-        this.cordova.getActivity().runOnUiThread(runnable);
+    /**
+     * Hands a dialog to the scheduler. Messages longer than the large message
+     * threshold are then split and laid out on a background thread, so the
+     * UI thread only ever measures the part that is on screen; the request
+     * keeps its place in the queue meanwhile.
+     */
+    private void submitDialog(final DialogRequest request) {
+        final String message = request.getMessage();
+        if (message == null || this.largeMessageThreshold <= 0 || message.length() <= this.largeMessageThreshold) {
+            this.dialogScheduler.submit(request);
+            return;
+        }
+        request.ready = false;
+        this.dialogScheduler.submit(request);
+        final Context context = this.cordova.getActivity().getApplicationContext();
+        final int pageSize = this.messagePageSize;
+        final DialogScheduler dialogScheduler = this.dialogScheduler;
+        this.cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                request.largeMessage = new LargeMessage(context, message, pageSize);
+                dialogScheduler.ready(request);
+            }
+        });
+    }
+
+    /**
+     * Shows a short notice at the bottom of the screen, drawn in the overlay
+     * whatever the DialogRenderer. Never blocks and never opens a window.
+     *
+     * @param message           The text of the notice
+     * @param options           duration in milliseconds and an action label, may be null
+     * @param callbackContext   Receives 1 if the action was tapped, 0 otherwise, may be null
+     */
+    public void notice(final String message, final JSONObject options, final CallbackContext callbackContext) {
+        final String actionLabel = options == null ? null : options.optString("action", null);
+        final long duration = options == null ? 0 : options.optLong("duration", 0);
+        final OverlayRenderer overlay = this.overlay;
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                overlay.notice(message, actionLabel, duration, callbackContext);
+            }
+        });
     }
 
     /**
@@ -359,40 +769,26 @@ public class Notification extends CordovaPlugin {
      * @param title     Title of the dialog
      * @param message   The message of the dialog
      */
-    public synchronized void activityStart(final String title, final String message) {
-        if (this.spinnerDialog != null) {
-            this.spinnerDialog.dismiss();
-            this.spinnerDialog = null;
-        }
-        final Notification notification = this;
-        final CordovaInterface cordova = this.cordova;
-        Runnable runnable = new Runnable() {
-            public void run() {
-                notification.spinnerDialog = createProgressDialog(cordova); // new ProgressDialog(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
-                notification.spinnerDialog.setTitle(title);
-                notification.spinnerDialog.setMessage(message);
-                notification.spinnerDialog.setCancelable(true);
-                notification.spinnerDialog.setIndeterminate(true);
-                notification.spinnerDialog.setOnCancelListener(
-                        new DialogInterface.OnCancelListener() {
-                            public void onCancel(DialogInterface dialog) {
-                                notification.spinnerDialog = null;
-                            }
-                        });
-                notification.spinnerDialog.show();
-            }
-        };
-        this.cordova.getActivity().runOnUiThread(runnable);
+    public void activityStart(final String title, final String message) {
+        this.activityStart(title, message, null);
+    }
+
+    /**
+     * Show the spinner, optionally only after a delay and for a minimum time.
+     *
+     * @param title     Title of the dialog
+     * @param message   The message of the dialog
+     * @param options   showDelay and minVisible in milliseconds, may be null
+     */
+    public void activityStart(final String title, final String message, final JSONObject options) {
+        this.spinner.start(title, message, options);
     }
 
     /**
      * Stop spinner.
      */
-    public synchronized void activityStop() {
-        if (this.spinnerDialog != null) {
-            this.spinnerDialog.dismiss();
-            this.spinnerDialog = null;
-        }
+    public void activityStop() {
+        this.spinner.stop();
     }
 
     /**
@@ -401,57 +797,212 @@ public class Notification extends CordovaPlugin {
      * @param title     Title of the dialog
      * @param message   The message of the dialog
      */
-    public synchronized void progressStart(final String title, final String message) {
-        if (this.progressDialog != null) {
-            this.progressDialog.dismiss();
-            this.progressDialog = null;
+    public void progressStart(final String title, final String message) {
+        this.progressStart(title, message, null);
+    }
+
+    /**
+     * Show the progress dialog, optionally only after a delay and for a minimum time.
+     * Every call starts a progress task. With join, the task is added to the
+     * ones already shown and the dialog shows their aggregated value;
+     * otherwise the task replaces them all, as a second progressStart always did.
+     *
+     * @param title     Title of the dialog
+     * @param message   The message of the dialog
+     * @param options   showDelay and minVisible in milliseconds, id, join,
+     *                  breakdown, and label and weight of the task, may be null
+     */
+    public void progressStart(final String title, final String message, final JSONObject options) {
+        this.startProgressTask(title, message, options, false);
+    }
+
+    private void startProgressTask(String title, String message, JSONObject options, boolean deferred) {
+        int id = options == null ? ProgressAggregator.IMPLICIT_TASK : options.optInt("id", ProgressAggregator.IMPLICIT_TASK);
+        if (options != null && options.optBoolean("join", false) && this.progress.isStarted()) {
+            this.progressTasks.add(id, message, options);
+            this.progressChanged(deferred);
+            return;
         }
-        final Notification notification = this;
-        final CordovaInterface cordova = this.cordova;
-        Runnable runnable = new Runnable() {
-            public void run() {
-                notification.progressDialog = createProgressDialog(cordova); // new ProgressDialog(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
-                notification.progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-                notification.progressDialog.setTitle(title);
-                notification.progressDialog.setMessage(message);
-                notification.progressDialog.setCancelable(true);
-                notification.progressDialog.setMax(100);
-                notification.progressDialog.setProgress(0);
-                notification.progressDialog.setOnCancelListener(
-                        new DialogInterface.OnCancelListener() {
-                            public void onCancel(DialogInterface dialog) {
-                                notification.progressDialog = null;
-                            }
-                        });
-                notification.progressDialog.show();
-            }
-        };
-        this.cordova.getActivity().runOnUiThread(runnable);
-    }
-
-    /**
-     * Set value of progress bar.
+        this.progressTasks.reset(id, message, options);
+        // A value of the old dialog may still be waiting for its frame, or
+        // for a batch; it must not end up on the new dialog.
+        this.progressCoalescer.reset(this.progressTasks.percent());
+        this.progressTitle = title;
+        this.progressInBackground = options == null ? this.backgroundProgress
+                : options.optBoolean("background", this.backgroundProgress);
+        if (this.progressNotifier.isActive()) {
+            // Started while in the background: the notification shows the new dialog.
+            this.progressNotifier.show(title, this.progressText(), this.progressTasks.percent());
+        }
+        if (deferred) {
+            this.progress.startDeferred(title, message, options);
+        } else {
+            this.progress.start(title, message, options);
+        }
+    }
+
+    /**
+     * Set value of progress bar, or of the last started task if there are several.
+     * Updates are coalesced and applied at most once per frame on the UI thread,
+     * so this never blocks the bridge thread.
      *
      * @param value     0-100
      */
-    public synchronized void progressValue(int value) {
-        if (this.progressDialog != null) {
-            this.progressDialog.setProgress(value);
+    public void progressValue(int value) {
+        this.progressTasks.value(value);
+        this.progressChanged(false);
+    }
+
+    /**
+     * Updates several progress tasks at once, then shows their aggregated value.
+     *
+     * @param updates   Updates by task id: value (0-100), or bytes and total, and weight
+     */
+    public void progressUpdate(JSONObject updates) {
+        this.progressTasks.update(updates);
+        this.progressChanged(false);
+    }
+
+    /**
+     * Stop progress dialog and all of its tasks.
+     */
+    public void progressStop() {
+        this.progressTasks.clear();
+        this.progressNotifier.cancel();
+        this.progress.stop();
+    }
+
+    /**
+     * Complete one progress task. The dialog is stopped with the last one.
+     *
+     * @param id        The id of the task
+     */
+    public void progressStop(int id) {
+        if (this.progressTasks.complete(id)) {
+            this.progressStop();
+        } else {
+            this.progressChanged(false);
         }
     }
 
     /**
-     * Stop progress dialog.
+     * Hands the aggregated value to the system notification while it stands
+     * in for the dialog, and to the dialog otherwise.
+     *
+     * @param deferred  Only store the value for the dialog, a batch applies it
      */
-    public synchronized void progressStop() {
-        if (this.progressDialog != null) {
-            this.progressDialog.dismiss();
-            this.progressDialog = null;
+    private void progressChanged(boolean deferred) {
+        int percent = this.progressTasks.percent();
+        if (this.progressNotifier.isActive()) {
+            this.progressNotifier.update(this.progressText(), percent);
+        } else if (deferred) {
+            this.progressCoalescer.store(percent);
+        } else {
+            this.progressCoalescer.update(percent);
+        }
+    }
+
+    /** Text of the progress notification: the breakdown if asked for, else the message. */
+    private String progressText() {
+        String breakdown = this.progressTasks.breakdown();
+        return breakdown != null ? breakdown : this.progressTasks.message();
+    }
+
+    /**
+     * Shows a progress value on the progress dialog or overlay card, and the
+     * per task breakdown in its message if one was asked for. UI thread only.
+     */
+    private void showProgress(DialogInterface dialog, int value) {
+        String breakdown = this.progressTasks.breakdown();
+        if (dialog instanceof ProgressDialog) {
+            ((ProgressDialog) dialog).setProgress(value);
+            if (breakdown != null) {
+                ((ProgressDialog) dialog).setMessage(breakdown);
+            }
+        } else if (dialog instanceof OverlayRenderer.Card) {
+            ((OverlayRenderer.Card) dialog).setProgress(value);
+            if (breakdown != null) {
+                ((OverlayRenderer.Card) dialog).setMessage(breakdown);
+            }
         }
     }
     
+    /**
+     * Sends the metrics, with what is still open: the number of visible and
+     * queued dialogs, and whether the spinner and progress dialog are on
+     * screen. Read on the UI thread, after the changes already posted there.
+     *
+     * @param callbackContext   The callback context
+     */
+    public void getMetrics(final CallbackContext callbackContext) {
+        final Notification notification = this;
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                try {
+                    JSONObject open = new JSONObject();
+                    open.put("dialogs", notification.dialogScheduler.size());
+                    open.put("activity", notification.spinner.getDialog() != null);
+                    open.put("progress", notification.progress.getDialog() != null);
+                    JSONObject json = notification.metrics.toJSON();
+                    json.put("open", open);
+                    callbackContext.success(json);
+                } catch (JSONException e) {
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies a list of indicator and beep operations with a single bridge call.
+     * Indicator changes are applied in one pass on the UI thread.
+     * Each operation is an array of the action name and its arguments, e.g.
+     * ["progressStart", ["Title", "Message"]]. The callback receives an array
+     * holding, for each operation, true or an error message.
+     *
+     * @param operations        The operations, in order
+     * @param callbackContext   The callback context
+     */
+    public void batch(JSONArray operations, CallbackContext callbackContext) {
+        final JSONArray results = new JSONArray();
+        boolean progressValueChanged = false;
+
+        for (int i = 0; i < operations.length(); i++) {
+            String action = null;
+            try {
+                JSONArray operation = operations.getJSONArray(i);
+                action = operation.getString(0);
+                JSONArray args = operation.optJSONArray(1);
+                Action handler = ACTIONS.get(action);
+                if (handler == null || !handler.defer(this, args == null ? new JSONArray() : args)) {
+                    results.put("Invalid action in batch: " + action);
+                    continue;
+                }
+                if (action.startsWith("progress")) {
+                    progressValueChanged = true;
+                }
+                results.put(true);
+            } catch (JSONException e) {
+                results.put("Invalid arguments in batch for " + action);
+            }
+        }
+
+        final boolean applyProgressValue = progressValueChanged;
+        final Notification notification = this;
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                notification.spinner.reconcileNow();
+                notification.progress.reconcileNow();
+                if (applyProgressValue) {
+                    notification.progressCoalescer.applyNow();
+                }
+            }
+        });
+        callbackContext.success(results);
+    }
+
     @SuppressLint("NewApi")
-    private AlertDialog.Builder createDialog(CordovaInterface cordova) {
+    static AlertDialog.Builder createDialog(CordovaInterface cordova) {
         int currentapiVersion = android.os.Build.VERSION.SDK_INT;
         if (currentapiVersion >= android.os.Build.VERSION_CODES.HONEYCOMB) {
             return new AlertDialog.Builder(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
@@ -461,7 +1012,7 @@ public class Notification extends CordovaPlugin {
     }
 
     @SuppressLint("InlinedApi")
-    private ProgressDialog createProgressDialog(CordovaInterface cordova) {
+    static ProgressDialog createProgressDialog(CordovaInterface cordova) {
         int currentapiVersion = android.os.Build.VERSION.SDK_INT;
         if (currentapiVersion >= android.os.Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
             return new ProgressDialog(cordova.getActivity(), AlertDialog.THEME_DEVICE_DEFAULT_LIGHT);
@@ -470,14 +1021,26 @@ public class Notification extends CordovaPlugin {
         }
     }
     
+    /**
+     * Lays out the message according to the locale. Only needs to run once per
+     * dialog, after it has been shown for the first time.
+     */
+    static void changeTextDirection(AlertDialog dialog){
+        TextView messageview = (TextView)dialog.findViewById(android.R.id.message);
+        if (messageview != null) {
+            setLocaleTextDirection(messageview);
+        }
+    }
+
+    /**
+     * Lays out a text view in the direction of the locale rather than of its
+     * first characters. Does nothing before Android 4.2.
+     */
     @SuppressLint("NewApi")
-    private void changeTextDirection(Builder dlg){
+    static void setLocaleTextDirection(TextView view) {
         int currentapiVersion = android.os.Build.VERSION.SDK_INT;
-        dlg.create();
-        AlertDialog dialog =  dlg.show();
         if (currentapiVersion >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            TextView messageview = (TextView)dialog.findViewById(android.R.id.message);
-            messageview.setTextDirection(android.view.View.TEXT_DIRECTION_LOCALE);
+            view.setTextDirection(android.view.View.TEXT_DIRECTION_LOCALE);
         }
     }
 }
@@ -0,0 +1,278 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Latency histograms and counters of the plugin, per action.
+ *
+ * Every call is timed at up to four points: receipt in execute(), pickup of
+ * the posted runnable on the UI thread, dialog shown, and result sent. The
+ * intervals between them go into per action histograms. Recording only
+ * increments atomics, so it is safe and cheap from any thread; a snapshot
+ * taken while recording is in progress may be off by the calls in flight.
+ */
+final class NotificationMetrics {
+
+    /** The intervals that are recorded. */
+    enum Stage {
+        /** Time spent in execute() on the bridge thread. */
+        EXECUTE("execute"),
+        /** Receipt in execute() to pickup on the UI thread. */
+        BRIDGE_TO_UI("bridgeToUi"),
+        /** Pickup on the UI thread to dialog shown, includes time waiting in the dialog queue. */
+        UI_TO_SHOWN("uiToShown"),
+        /** Dialog shown to result sent, usually the time the user takes to answer. */
+        SHOWN_TO_CALLBACK("shownToCallback"),
+        /** Receipt in execute() to result sent. */
+        TOTAL("total");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    /** Counters that are not tied to one action. */
+    enum Counter {
+        PROGRESS_RECEIVED("progressReceived"),
+        PROGRESS_APPLIED("progressApplied"),
+        PROGRESS_NOTIFIED("progressNotified"),
+        DIALOGS_COALESCED("dialogsCoalesced"),
+        DIALOGS_DROPPED("dialogsDropped"),
+        DIALOGS_TIMED_OUT("dialogsTimedOut"),
+        DIALOGS_ABANDONED("dialogsAbandoned"),
+        INDICATORS_SKIPPED("indicatorsSkipped"),
+        RESULTS_SENT("resultsSent"),
+        RESULTS_SUPPRESSED("resultsSuppressed");
+
+        final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Histogram of durations with power of two buckets in microseconds.
+     * Percentiles are reported as the upper bound of their bucket.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 32;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(micros);
+            long current = max.get();
+            while (micros > current && !max.compareAndSet(current, micros)) {
+                current = max.get();
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        JSONObject toJSON() throws JSONException {
+            long n = count.get();
+            JSONObject json = new JSONObject();
+            json.put("count", n);
+            json.put("mean", n == 0 ? 0 : sum.get() / (double) n / 1000);
+            json.put("p50", percentile(n, 0.5));
+            json.put("p95", percentile(n, 0.95));
+            json.put("p99", percentile(n, 0.99));
+            json.put("max", max.get() / 1000.0);
+            return json;
+        }
+
+        /** Upper bound of the bucket holding the given percentile, in milliseconds. */
+        private double percentile(long n, double q) {
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(i == 0 ? 0 : 1L << i, max.get()) / 1000.0;
+                }
+            }
+            return max.get() / 1000.0;
+        }
+    }
+
+    /**
+     * Call count and stage histograms of one action.
+     */
+    static final class ActionMetrics {
+        final AtomicLong calls = new AtomicLong();
+        final Histogram[] stages = new Histogram[Stage.values().length];
+
+        ActionMetrics() {
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new Histogram();
+            }
+        }
+
+        void reset() {
+            calls.set(0);
+            for (Histogram histogram : stages) {
+                histogram.reset();
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, ActionMetrics> actions = new ConcurrentHashMap<String, ActionMetrics>();
+    private final ConcurrentMap<String, Long> startup = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong[] counters = new AtomicLong[Counter.values().length];
+    private volatile long since = System.currentTimeMillis();
+
+    NotificationMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicLong();
+        }
+    }
+
+    /** The current time on the clock used by record(). */
+    static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Counts a call to an action and records how long execute() took for it.
+     */
+    void recordCall(String action, long startNanos) {
+        ActionMetrics metrics = forAction(action);
+        metrics.calls.incrementAndGet();
+        metrics.stages[Stage.EXECUTE.ordinal()].record(now() - startNanos);
+    }
+
+    /**
+     * Records the interval between two timestamps taken with now().
+     * Does nothing if either timestamp was never taken.
+     */
+    void record(String action, Stage stage, long fromNanos, long toNanos) {
+        if (fromNanos == 0 || toNanos == 0) {
+            return;
+        }
+        forAction(action).stages[stage.ordinal()].record(toNanos - fromNanos);
+    }
+
+    /**
+     * Records how long one step of the plugin's startup took. These are only
+     * taken once per plugin instance, so reset() keeps them.
+     */
+    void recordStartup(String step, long nanos) {
+        startup.put(step, nanos);
+    }
+
+    void increment(Counter counter) {
+        counters[counter.ordinal()].incrementAndGet();
+    }
+
+    void add(Counter counter, long delta) {
+        counters[counter.ordinal()].addAndGet(delta);
+    }
+
+    void reset() {
+        for (ActionMetrics metrics : actions.values()) {
+            metrics.reset();
+        }
+        for (AtomicLong counter : counters) {
+            counter.set(0);
+        }
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Snapshot of all metrics, durations in milliseconds:
+     * { since, actions: { name: { calls, stage: { count, mean, p50, p95, p99, max } } }, counters: { name: value } }.
+     * progressCoalesced is derived: progress values received but never applied.
+     * startup holds the duration of each startup step that was recorded.
+     */
+    JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("since", since);
+
+        JSONObject actionsJson = new JSONObject();
+        for (Map.Entry<String, ActionMetrics> entry : actions.entrySet()) {
+            ActionMetrics metrics = entry.getValue();
+            JSONObject actionJson = new JSONObject();
+            actionJson.put("calls", metrics.calls.get());
+            for (Stage stage : Stage.values()) {
+                Histogram histogram = metrics.stages[stage.ordinal()];
+                if (histogram.count.get() > 0) {
+                    actionJson.put(stage.key, histogram.toJSON());
+                }
+            }
+            actionsJson.put(entry.getKey(), actionJson);
+        }
+        json.put("actions", actionsJson);
+
+        JSONObject countersJson = new JSONObject();
+        for (Counter counter : Counter.values()) {
+            countersJson.put(counter.key, counters[counter.ordinal()].get());
+        }
+        countersJson.put("progressCoalesced",
+                counters[Counter.PROGRESS_RECEIVED.ordinal()].get() - counters[Counter.PROGRESS_APPLIED.ordinal()].get());
+        json.put("counters", countersJson);
+
+        JSONObject startupJson = new JSONObject();
+        for (Map.Entry<String, Long> entry : startup.entrySet()) {
+            startupJson.put(entry.getKey(), entry.getValue() / 1000000.0);
+        }
+        json.put("startup", startupJson);
+        return json;
+    }
+
+    private ActionMetrics forAction(String action) {
+        ActionMetrics metrics = actions.get(action);
+        if (metrics == null) {
+            ActionMetrics created = new ActionMetrics();
+            metrics = actions.putIfAbsent(action, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+}
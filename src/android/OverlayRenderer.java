@@ -0,0 +1,581 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.DialogInterface;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+/**
+ * Draws alerts, confirms, prompts, the progress indicators and notices as
+ * views in a single overlay on top of the activity's content, instead of
+ * one window per dialog.
+ *
+ * The overlay and its cards are built once per activity and then only
+ * rebound and toggled visible, so showing a dialog costs no window and no
+ * inflation. A scrim below the cards keeps touches from reaching the page
+ * while a dialog or indicator is visible; notices leave the page usable.
+ * UI thread only.
+ */
+final class OverlayRenderer {
+
+    /** How long a notice is visible when no duration is given, in milliseconds. */
+    static final long DEFAULT_NOTICE_DURATION = 2750;
+
+    private static final int SCRIM_COLOR = 0x99000000;
+    private static final int NOTICE_COLOR = 0xEE323232;
+
+    /**
+     * One card of the overlay: a dialog, the spinner or the progress bar.
+     * Behaves like a dialog to its users, dismissing it hides the card.
+     */
+    final class Card implements DialogInterface {
+        final LinearLayout view;
+        final TextView title;
+        final TextView message;
+        private final ScrollView messageScroll;
+        final ProgressBar progressBar;
+        final PromptInput input;
+        private final LinearLayout buttonBar;
+        private final PromptInput.Buttons validatedButtons;
+
+        /** Built on first use, most dialogs never need them. */
+        FormFields form;
+        LargeMessageView largeMessage;
+        SelectList select;
+
+        /** Negative, neutral and positive button, reported as index 1, 2 and 3. */
+        final Button[] buttons = new Button[3];
+
+        DialogRequest request;
+        DialogScheduler scheduler;
+        DialogInterface.OnCancelListener cancelListener;
+
+        Card(Activity activity, boolean dialog, boolean horizontal) {
+            view = new LinearLayout(activity);
+            view.setOrientation(LinearLayout.VERTICAL);
+            view.setBackgroundColor(Color.WHITE);
+            view.setClickable(true);
+            view.setPadding(dp(24), dp(20), dp(24), dp(dialog ? 8 : 24));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                setElevation(view, dp(24));
+            }
+
+            title = new TextView(activity);
+            title.setTextSize(TypedValue.COMPLEX_UNIT_SP, 20);
+            title.setTypeface(Typeface.DEFAULT_BOLD);
+            title.setTextColor(Color.BLACK);
+            view.addView(title);
+
+            message = new TextView(activity);
+            message.setTextSize(TypedValue.COMPLEX_UNIT_SP, 16);
+            message.setTextColor(Color.DKGRAY);
+            message.setPadding(0, dp(12), 0, 0);
+            Notification.setLocaleTextDirection(message);
+            // Like in a dialog window, a long message scrolls and gives up
+            // its height first, so the buttons stay on screen.
+            messageScroll = new ScrollView(activity);
+            messageScroll.addView(message);
+            view.addView(messageScroll, new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT, 1f));
+
+            if (dialog) {
+                progressBar = null;
+                validatedButtons = new PromptInput.Buttons() {
+                    public void setEnabled(int buttonIndex, boolean enabled) {
+                        if (buttonIndex >= 1 && buttonIndex <= 3) {
+                            buttons[buttonIndex - 1].setEnabled(enabled);
+                        }
+                    }
+                };
+                input = new PromptInput(activity, handler, validatedButtons);
+                input.view.setOnKeyListener(backKeyListener);
+                view.addView(input.view);
+
+                buttonBar = new LinearLayout(activity);
+                buttonBar.setOrientation(LinearLayout.HORIZONTAL);
+                buttonBar.setGravity(Gravity.END);
+                buttonBar.setPadding(0, dp(16), 0, 0);
+                // Same order as an AlertDialog: neutral, negative, positive.
+                int[] order = { 1, 0, 2 };
+                for (int i : order) {
+                    buttons[i] = createButton(activity);
+                    final int buttonIndex = i + 1;
+                    buttons[i].setOnClickListener(new View.OnClickListener() {
+                        public void onClick(View v) {
+                            onButton(buttonIndex);
+                        }
+                    });
+                    buttonBar.addView(buttons[i]);
+                }
+                view.addView(buttonBar);
+            } else {
+                input = null;
+                buttonBar = null;
+                validatedButtons = null;
+                progressBar = horizontal
+                        ? new ProgressBar(activity, null, android.R.attr.progressBarStyleHorizontal)
+                        : new ProgressBar(activity);
+                progressBar.setPadding(0, dp(16), 0, 0);
+                if (horizontal) {
+                    progressBar.setMax(100);
+                }
+                view.addView(progressBar);
+            }
+
+            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.CENTER);
+            params.setMargins(dp(32), dp(32), dp(32), dp(32));
+            view.setVisibility(View.GONE);
+            root.addView(view, params);
+        }
+
+        void setTitle(CharSequence text) {
+            title.setText(text);
+            title.setVisibility(text == null || text.length() == 0 ? View.GONE : View.VISIBLE);
+        }
+
+        void setMessage(CharSequence text) {
+            message.setText(text);
+            messageScroll.setVisibility(text == null || text.length() == 0 ? View.GONE : View.VISIBLE);
+            messageScroll.scrollTo(0, 0);
+        }
+
+        void setProgress(int value) {
+            if (progressBar != null) {
+                progressBar.setProgress(value);
+            }
+        }
+
+        /**
+         * Adds the views the request needs and this card does not have yet.
+         * The card reads message, large message, input, form, select, buttons.
+         */
+        void prepare(DialogRequest request) {
+            Activity activity = OverlayRenderer.this.activity;
+            if (request.largeMessage != null && largeMessage == null) {
+                largeMessage = new LargeMessageView(activity);
+                view.addView(largeMessage.view, view.indexOfChild(messageScroll) + 1);
+            }
+            if (request.kind == DialogRequest.FORM && form == null) {
+                form = new FormFields(activity, validatedButtons);
+                form.setOnKeyListener(backKeyListener);
+                view.addView(form.view, view.indexOfChild(input.view) + 1);
+            }
+            if (request.items != null && select == null) {
+                select = new SelectList(activity);
+                select.setOnKeyListener(backKeyListener);
+                view.addView(select.view, view.indexOfChild(buttonBar));
+            }
+        }
+
+        private void bindButton(int buttonIndex, String label) {
+            Button button = buttons[buttonIndex - 1];
+            button.setEnabled(true);
+            if (label == null) {
+                button.setVisibility(View.GONE);
+            } else {
+                button.setText(label);
+                button.setVisibility(View.VISIBLE);
+            }
+        }
+
+        private void onButton(int buttonIndex) {
+            if (request != null) {
+                finish(request.kind == DialogRequest.ALERT ? 0 : buttonIndex);
+            }
+        }
+
+        private void finish(int buttonIndex) {
+            DialogRequest finished = request;
+            DialogScheduler finishedBy = scheduler;
+            String text = input.finish();
+            JSONObject values = form != null ? form.finish() : null;
+            JSONArray indexes = select != null ? select.finish() : null;
+            hide(this);
+            finishedBy.finish(finished, buttonIndex, values != null ? values : (indexes != null ? indexes : text));
+        }
+
+        public void cancel() {
+            if (!shown.contains(this)) {
+                return;
+            }
+            if (request != null) {
+                finish(DialogRequest.RESULT_DISMISSED);
+            } else {
+                hide(this);
+                if (cancelListener != null) {
+                    cancelListener.onCancel(this);
+                }
+            }
+        }
+
+        public void dismiss() {
+            if (input != null) {
+                input.finish();
+            }
+            if (form != null) {
+                form.finish();
+            }
+            if (select != null) {
+                select.finish();
+            }
+            hide(this);
+        }
+    }
+
+    private final CordovaInterface cordova;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Activity activity;
+    private FrameLayout root;
+    private View scrim;
+
+    /** Visible cards, the last one is on top. */
+    private final List<Card> shown = new ArrayList<Card>();
+
+    /** The view that had focus before the first card was shown, given it back after the last one. */
+    private View focusBeforeShown;
+    private final List<Card> idle = new ArrayList<Card>();
+    private Card spinnerCard;
+    private Card progressCard;
+
+    private LinearLayout notice;
+    private TextView noticeText;
+    private Button noticeAction;
+    private CallbackContext noticeCallback;
+
+    private final Runnable hideNotice = new Runnable() {
+        public void run() {
+            endNotice(0);
+        }
+    };
+
+    private final View.OnKeyListener backKeyListener = new View.OnKeyListener() {
+        public boolean onKey(View v, int keyCode, KeyEvent event) {
+            if (keyCode != KeyEvent.KEYCODE_BACK || shown.isEmpty()) {
+                return false;
+            }
+            if (event.getAction() == KeyEvent.ACTION_UP) {
+                cancelTop();
+            }
+            return true;
+        }
+    };
+
+    OverlayRenderer(CordovaInterface cordova) {
+        this.cordova = cordova;
+    }
+
+    /**
+     * Shows a request in a pooled or new dialog card.
+     */
+    Card present(DialogRequest request, DialogScheduler scheduler) {
+        checkActivity();
+        Card card = idle.isEmpty() ? new Card(activity, true, false) : idle.remove(idle.size() - 1);
+        card.request = request;
+        card.scheduler = scheduler;
+        card.cancelListener = null;
+        card.prepare(request);
+        card.setTitle(request.getDisplayTitle());
+        // A large message is shown by its own view, the plain one is hidden.
+        card.setMessage(request.largeMessage == null ? request.getMessage() : null);
+        if (card.largeMessage != null) {
+            card.largeMessage.bind(request);
+        }
+        card.bindButton(1, request.buttonLabel(1));
+        card.bindButton(2, request.buttonLabel(2));
+        card.bindButton(3, request.buttonLabel(3));
+        card.input.bind(request);
+        if (card.form != null) {
+            card.form.bind(request);
+        }
+        if (card.select != null) {
+            card.select.bind(request);
+        }
+        show(card);
+        return card;
+    }
+
+    /**
+     * Refreshes the title of a visible request, after identical requests were merged into it.
+     */
+    void update(DialogRequest request) {
+        if (request.dialog instanceof Card) {
+            ((Card) request.dialog).setTitle(request.getDisplayTitle());
+        }
+    }
+
+    /**
+     * Shows the spinner or the progress bar card for an indicator session.
+     *
+     * @param horizontal        True for the progress bar, false for the spinner
+     * @param cancelListener    Called when the user cancels the card
+     */
+    Card showIndicator(Indicator.Session session, boolean horizontal, DialogInterface.OnCancelListener cancelListener) {
+        checkActivity();
+        Card card = horizontal ? progressCard : spinnerCard;
+        if (card == null) {
+            card = new Card(activity, false, horizontal);
+            if (horizontal) {
+                progressCard = card;
+            } else {
+                spinnerCard = card;
+            }
+        }
+        card.cancelListener = cancelListener;
+        card.setTitle(session.title);
+        card.setMessage(session.message);
+        card.setProgress(0);
+        card.progressBar.setIndeterminate(!horizontal);
+        show(card);
+        return card;
+    }
+
+    /**
+     * Shows a short notice at the bottom of the screen, replacing the one
+     * showing. The page below stays usable.
+     *
+     * @param message           Text of the notice
+     * @param actionLabel       Label of an action button, or null for none
+     * @param duration          Milliseconds until the notice hides itself
+     * @param callbackContext   Receives 1 if the action was tapped, 0 otherwise, may be null
+     */
+    void notice(String message, String actionLabel, long duration, CallbackContext callbackContext) {
+        checkActivity();
+        endNotice(0);
+        if (notice == null) {
+            createNotice();
+        }
+        noticeText.setText(message);
+        if (actionLabel == null || actionLabel.length() == 0) {
+            noticeAction.setVisibility(View.GONE);
+        } else {
+            noticeAction.setText(actionLabel);
+            noticeAction.setVisibility(View.VISIBLE);
+        }
+        noticeCallback = callbackContext;
+        notice.setVisibility(View.VISIBLE);
+        notice.bringToFront();
+        handler.postDelayed(hideNotice, duration > 0 ? duration : DEFAULT_NOTICE_DURATION);
+    }
+
+    /**
+     * Attaches the overlay and builds a dialog card, both indicator cards and
+     * the notice ahead of the first call.
+     */
+    void warm() {
+        checkActivity();
+        if (idle.isEmpty()) {
+            idle.add(new Card(activity, true, false));
+        }
+        if (spinnerCard == null) {
+            spinnerCard = new Card(activity, false, false);
+        }
+        if (progressCard == null) {
+            progressCard = new Card(activity, false, true);
+        }
+        if (notice == null) {
+            createNotice();
+        }
+    }
+
+    /**
+     * Takes the visible cards off screen and removes the overlay from the
+     * activity. The cards are not answered: that would pass for a dismissal
+     * by the user and show the next queued dialog on the overlay being
+     * removed. The dialog scheduler resolves their requests with
+     * RESULT_LIFECYCLE as the activity goes away.
+     */
+    void clear() {
+        while (!shown.isEmpty()) {
+            shown.get(shown.size() - 1).dismiss();
+        }
+        endNotice(0);
+        if (root != null && root.getParent() instanceof ViewGroup) {
+            ((ViewGroup) root.getParent()).removeView(root);
+        }
+        root = null;
+        scrim = null;
+        notice = null;
+        idle.clear();
+        spinnerCard = null;
+        progressCard = null;
+        activity = null;
+    }
+
+    private void show(Card card) {
+        if (shown.isEmpty()) {
+            focusBeforeShown = activity.getCurrentFocus();
+        }
+        shown.remove(card);
+        shown.add(card);
+        scrim.setVisibility(View.VISIBLE);
+        card.view.setVisibility(View.VISIBLE);
+        card.view.bringToFront();
+        if (notice != null && notice.getVisibility() == View.VISIBLE) {
+            notice.bringToFront();
+        }
+        // Takes the back key away from the page, like a dialog window does.
+        root.requestFocus();
+    }
+
+    private void hide(Card card) {
+        if (!shown.remove(card)) {
+            return;
+        }
+        card.view.setVisibility(View.GONE);
+        if (card.request != null) {
+            if (card.largeMessage != null) {
+                card.largeMessage.clear();
+            }
+            card.request = null;
+            card.scheduler = null;
+            idle.add(card);
+        }
+        if (shown.isEmpty()) {
+            scrim.setVisibility(View.GONE);
+            // The root must not keep the focus: the back key would reach the
+            // activity instead of the page's backbutton handler.
+            root.clearFocus();
+            if (focusBeforeShown != null) {
+                focusBeforeShown.requestFocus();
+                focusBeforeShown = null;
+            }
+        }
+    }
+
+    private void cancelTop() {
+        shown.get(shown.size() - 1).cancel();
+    }
+
+    private void endNotice(int result) {
+        handler.removeCallbacks(hideNotice);
+        if (notice != null) {
+            notice.setVisibility(View.GONE);
+        }
+        CallbackContext callbackContext = noticeCallback;
+        noticeCallback = null;
+        if (callbackContext != null) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+        }
+    }
+
+    private void createNotice() {
+        notice = new LinearLayout(activity);
+        notice.setOrientation(LinearLayout.HORIZONTAL);
+        notice.setGravity(Gravity.CENTER_VERTICAL);
+        notice.setBackgroundColor(NOTICE_COLOR);
+        notice.setPadding(dp(24), dp(6), dp(8), dp(6));
+        notice.setMinimumHeight(dp(48));
+
+        noticeText = new TextView(activity);
+        noticeText.setTextColor(Color.WHITE);
+        noticeText.setTextSize(TypedValue.COMPLEX_UNIT_SP, 14);
+        notice.addView(noticeText, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1f));
+
+        noticeAction = createButton(activity);
+        noticeAction.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                endNotice(1);
+            }
+        });
+        notice.addView(noticeAction);
+
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM);
+        params.setMargins(dp(8), 0, dp(8), dp(8));
+        notice.setVisibility(View.GONE);
+        root.addView(notice, params);
+    }
+
+    private void checkActivity() {
+        Activity current = cordova.getActivity();
+        if (activity == current && root != null) {
+            return;
+        }
+        clear();
+        activity = current;
+
+        root = new FrameLayout(activity);
+        root.setFocusableInTouchMode(true);
+        root.setOnKeyListener(backKeyListener);
+
+        scrim = new View(activity);
+        scrim.setBackgroundColor(SCRIM_COLOR);
+        scrim.setClickable(true);
+        scrim.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                if (!shown.isEmpty()) {
+                    cancelTop();
+                }
+            }
+        });
+        scrim.setVisibility(View.GONE);
+        root.addView(scrim, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+        ViewGroup content = (ViewGroup) activity.findViewById(android.R.id.content);
+        content.addView(root, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    }
+
+    @SuppressLint("InlinedApi")
+    private Button createButton(Activity activity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return new Button(activity, null, android.R.attr.borderlessButtonStyle);
+        }
+        return new Button(activity);
+    }
+
+    private int dp(int value) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value,
+                activity.getResources().getDisplayMetrics());
+    }
+
+    @SuppressLint("NewApi")
+    private static void setElevation(View view, float elevation) {
+        view.setElevation(elevation);
+    }
+}
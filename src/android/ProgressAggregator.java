@@ -0,0 +1,277 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+
+/**
+ * The tasks behind the progress indicator, aggregated into one value.
+ *
+ * Every progressStart is a task, identified by an id chosen by JavaScript.
+ * A task reports a value from 0 to 100, or bytes out of a total, and may
+ * carry a weight. The indicator shows the weighted mean of all tasks; when
+ * no task has a weight and every task knows its total, tasks are weighted
+ * by their total, so the bar follows the bytes. A stopped task counts as
+ * complete until the last one is stopped.
+ *
+ * Written from the bridge thread and read from the UI thread. The tasks are
+ * an immutable snapshot, replaced as a whole by compare-and-set, so the UI
+ * thread never waits for the bridge thread; the aggregated value is
+ * computed once per change rather than on every read.
+ */
+final class ProgressAggregator {
+
+    /** Id of the task implied by a progressValue without any progressStart. */
+    static final int IMPLICIT_TASK = 0;
+
+    private static final class Task {
+        final String label;
+        final double weight;
+        final long bytes;
+        final long total;
+        final double fraction;
+
+        Task(String label, double weight, long bytes, long total, double fraction) {
+            this.label = label;
+            this.weight = weight;
+            this.bytes = bytes;
+            this.total = total;
+            this.fraction = fraction;
+        }
+
+        Task withFraction(double fraction) {
+            return new Task(label, weight, bytes, total, fraction);
+        }
+
+        Task update(JSONObject update) {
+            double weight = update.has("weight") ? Math.max(0, update.optDouble("weight", 0)) : this.weight;
+            long total = update.has("total") ? Math.max(0, update.optLong("total", 0)) : this.total;
+            long bytes = update.has("bytes") ? Math.max(0, update.optLong("bytes", 0)) : this.bytes;
+            double fraction = this.fraction;
+            if (update.has("value")) {
+                fraction = clamp(update.optDouble("value", 0) / 100);
+            } else if (total > 0) {
+                fraction = clamp(bytes / (double) total);
+            }
+            return new Task(label, weight, bytes, total, fraction);
+        }
+
+        Task complete() {
+            long total = Math.max(this.total, bytes);
+            return new Task(label, weight, total, total, 1);
+        }
+    }
+
+    private static final class State {
+        final Map<Integer, Task> tasks;
+        final Integer lastStarted;
+        final String message;
+        final boolean breakdown;
+        final int percent;
+
+        State(Map<Integer, Task> tasks, Integer lastStarted, String message, boolean breakdown) {
+            this.tasks = Collections.unmodifiableMap(tasks);
+            this.lastStarted = lastStarted;
+            this.message = message;
+            this.breakdown = breakdown;
+            this.percent = percent(tasks);
+        }
+
+        Map<Integer, Task> copyTasks() {
+            return new LinkedHashMap<Integer, Task>(tasks);
+        }
+
+        boolean isComplete() {
+            for (Task task : tasks.values()) {
+                if (task.fraction < 1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final State EMPTY = new State(new LinkedHashMap<Integer, Task>(), null, null, false);
+
+    private final AtomicReference<State> state = new AtomicReference<State>(EMPTY);
+
+    /**
+     * Drops all tasks and starts over with a single one.
+     *
+     * @param options   breakdown, and label and weight of the task, may be null
+     */
+    void reset(int id, String message, JSONObject options) {
+        Map<Integer, Task> tasks = new LinkedHashMap<Integer, Task>();
+        tasks.put(id, createTask(id, message, options));
+        state.set(new State(tasks, id, message, options != null && options.optBoolean("breakdown", false)));
+    }
+
+    /**
+     * Adds a task to the running ones.
+     *
+     * @param options   label and weight of the task, may be null
+     */
+    void add(int id, String message, JSONObject options) {
+        Task task = createTask(id, message, options);
+        for (;;) {
+            State current = state.get();
+            Map<Integer, Task> tasks = current.copyTasks();
+            tasks.put(id, task);
+            if (state.compareAndSet(current, new State(tasks, id, current.message, current.breakdown))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies updates to several tasks, by task id: value (0 to 100), bytes
+     * and total, weight. Updates of unknown or invalid task ids are ignored.
+     */
+    void update(JSONObject updates) {
+        for (;;) {
+            State current = state.get();
+            Map<Integer, Task> tasks = current.copyTasks();
+            Iterator<String> ids = updates.keys();
+            while (ids.hasNext()) {
+                String id = ids.next();
+                JSONObject update = updates.optJSONObject(id);
+                if (update == null) {
+                    continue;
+                }
+                try {
+                    Integer key = Integer.valueOf(id);
+                    Task task = tasks.get(key);
+                    if (task != null) {
+                        tasks.put(key, task.update(update));
+                    }
+                } catch (NumberFormatException e) {
+                    // Not a task id, there is no such task.
+                }
+            }
+            if (state.compareAndSet(current, new State(tasks, current.lastStarted, current.message, current.breakdown))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sets the value of the last started task, as progressValue always did.
+     */
+    void value(int value) {
+        for (;;) {
+            State current = state.get();
+            Map<Integer, Task> tasks = current.copyTasks();
+            Integer id = current.lastStarted;
+            if (id == null) {
+                id = IMPLICIT_TASK;
+                tasks.put(id, createTask(id, null, null));
+            }
+            tasks.put(id, tasks.get(id).withFraction(clamp(value / 100.0)));
+            if (state.compareAndSet(current, new State(tasks, id, current.message, current.breakdown))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marks a task as complete. Returns true once every task is.
+     */
+    boolean complete(int id) {
+        for (;;) {
+            State current = state.get();
+            Task task = current.tasks.get(id);
+            if (task == null) {
+                return current.isComplete();
+            }
+            Map<Integer, Task> tasks = current.copyTasks();
+            tasks.put(id, task.complete());
+            State next = new State(tasks, current.lastStarted, current.message, current.breakdown);
+            if (state.compareAndSet(current, next)) {
+                return next.isComplete();
+            }
+        }
+    }
+
+    void clear() {
+        state.set(EMPTY);
+    }
+
+    /** The message of the task that started the dialog. */
+    String message() {
+        return state.get().message;
+    }
+
+    /** The aggregated value, 0 to 100. */
+    int percent() {
+        return state.get().percent;
+    }
+
+    /**
+     * The message followed by one line per task with its own value, or null
+     * if no breakdown was asked for.
+     */
+    String breakdown() {
+        State current = state.get();
+        if (!current.breakdown) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(current.message == null ? "" : current.message);
+        for (Task task : current.tasks.values()) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(task.label).append(": ").append(Math.round(task.fraction * 100)).append('%');
+        }
+        return text.toString();
+    }
+
+    private static Task createTask(int id, String message, JSONObject options) {
+        String label = options != null && options.has("label") ? options.optString("label") : message;
+        double weight = options == null ? 0 : Math.max(0, options.optDouble("weight", 0));
+        return new Task(label != null ? label : "#" + id, weight, 0, 0, 0);
+    }
+
+    private static int percent(Map<Integer, Task> tasks) {
+        boolean byTotal = true;
+        for (Task task : tasks.values()) {
+            if (task.weight > 0 || task.total <= 0) {
+                byTotal = false;
+                break;
+            }
+        }
+        double sum = 0;
+        double weights = 0;
+        for (Task task : tasks.values()) {
+            double weight = byTotal ? task.total : (task.weight > 0 ? task.weight : 1);
+            sum += weight * task.fraction;
+            weights += weight;
+        }
+        return weights == 0 ? 0 : (int) Math.round(sum / weights * 100);
+    }
+
+    private static double clamp(double fraction) {
+        return Math.max(0, Math.min(1, fraction));
+    }
+}
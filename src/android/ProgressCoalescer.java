@@ -0,0 +1,159 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CordovaInterface;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Coalesces progress updates coming from the bridge thread.
+ *
+ * Only the latest value is kept, and at most one value is handed to the
+ * target per display frame, on the UI thread, and no more often than the
+ * minimum interval. Values that are overwritten before they are due are
+ * never applied.
+ */
+final class ProgressCoalescer {
+
+    /**
+     * Receives the coalesced value on the UI thread.
+     */
+    interface Target {
+        void apply(int value);
+    }
+
+    /** Frame interval used when Choreographer is not available. */
+    private static final long FALLBACK_FRAME_MS = 16;
+
+    private final CordovaInterface cordova;
+    private final Target target;
+    private final NotificationMetrics metrics;
+    private final long minInterval;
+
+    private final AtomicInteger latest = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Object frameCallback;
+
+    /** UI thread only: uptime at which a value was last applied. */
+    private long appliedAt;
+
+    private final Runnable frame = new Runnable() {
+        public void run() {
+            long wait = appliedAt + minInterval - SystemClock.uptimeMillis();
+            if (wait > 0) {
+                // Still scheduled: values stored meanwhile are picked up then.
+                handler.postDelayed(frame, wait);
+                return;
+            }
+            appliedAt = SystemClock.uptimeMillis();
+            // Clear the flag before reading so that a value stored while we
+            // apply this one schedules another frame instead of being lost.
+            scheduled.set(false);
+            metrics.increment(NotificationMetrics.Counter.PROGRESS_APPLIED);
+            target.apply(latest.get());
+        }
+    };
+
+    private final Runnable scheduleOnUiThread = new Runnable() {
+        public void run() {
+            postFrame();
+        }
+    };
+
+    /**
+     * @param minInterval   Minimum milliseconds between two applied values,
+     *                      0 for once per frame
+     */
+    ProgressCoalescer(CordovaInterface cordova, NotificationMetrics metrics, long minInterval, Target target) {
+        this.cordova = cordova;
+        this.metrics = metrics;
+        this.minInterval = Math.max(0, minInterval);
+        this.target = target;
+    }
+
+    /**
+     * Store a new value. Safe to call from any thread, never blocks.
+     */
+    void update(int value) {
+        metrics.increment(NotificationMetrics.Counter.PROGRESS_RECEIVED);
+        latest.set(value);
+        if (scheduled.compareAndSet(false, true)) {
+            cordova.getActivity().runOnUiThread(scheduleOnUiThread);
+        }
+    }
+
+    /**
+     * Store a new value without scheduling a frame. The caller applies it
+     * with applyNow(). Safe to call from any thread.
+     */
+    void store(int value) {
+        metrics.increment(NotificationMetrics.Counter.PROGRESS_RECEIVED);
+        latest.set(value);
+    }
+
+    /**
+     * Replace the latest value without counting it as received, for a new
+     * dialog: a frame that is still pending then applies this value instead
+     * of one meant for the old dialog. Safe to call from any thread.
+     */
+    void reset(int value) {
+        latest.set(value);
+    }
+
+    /**
+     * Apply the latest value right away. UI thread only.
+     */
+    void applyNow() {
+        appliedAt = SystemClock.uptimeMillis();
+        metrics.increment(NotificationMetrics.Counter.PROGRESS_APPLIED);
+        target.apply(latest.get());
+    }
+
+    /** Must run on the UI thread: Choreographer is bound to the looper. */
+    private void postFrame() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            handler.postDelayed(frame, FALLBACK_FRAME_MS);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (frameCallback == null) {
+            frameCallback = new Choreographer.FrameCallback() {
+                public void doFrame(long frameTimeNanos) {
+                    frame.run();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.annotation.TargetApi;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Shows the progress of the progress dialog as a system notification while
+ * the activity is in the background.
+ *
+ * NotificationManager drops updates posted faster than a few per second,
+ * and each one is a binder call, so updates are coalesced: only the latest
+ * value is kept and at most one is posted per interval. All work with the
+ * NotificationManager is done on the main looper, in order, so a cancel is
+ * never overtaken by a late update. Every method may be called from any
+ * thread.
+ *
+ * The notification must not outlive the process that posts it: if the app
+ * is killed in the background, nothing would ever cancel it. So it is only
+ * ongoing where it can time out by itself (Android 8 and up), and expires
+ * when no update came for a while; below that it can be swiped away. A new
+ * plugin instance also removes whatever a previous process left behind.
+ */
+final class ProgressNotifier {
+
+    private static final String CHANNEL_ID = "cordova-plugin-dialogs-progress";
+    private static final int NOTIFICATION_ID = 0x646c6773;
+
+    /** The notification goes away after this many milliseconds without an update. */
+    private static final long STALE_TIMEOUT_MS = 60000;
+
+    private final Context context;
+    private final NotificationMetrics metrics;
+    private final long minInterval;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private volatile boolean active;
+
+    // Latest values, guarded by this.
+    private String title;
+    private String text;
+    private int percent;
+
+    // Main looper only.
+    private long postedAt;
+    private boolean channelCreated;
+
+    private final Runnable post = new Runnable() {
+        public void run() {
+            long wait = postedAt + minInterval - SystemClock.uptimeMillis();
+            if (wait > 0) {
+                // Still scheduled: values stored meanwhile are picked up then.
+                handler.postDelayed(post, wait);
+                return;
+            }
+            scheduled.set(false);
+            if (active) {
+                postedAt = SystemClock.uptimeMillis();
+                notifyNow();
+            }
+        }
+    };
+
+    private final Runnable remove = new Runnable() {
+        public void run() {
+            if (!active) {
+                manager().cancel(NOTIFICATION_ID);
+            }
+        }
+    };
+
+    /**
+     * @param minInterval   Minimum milliseconds between two posted updates
+     */
+    ProgressNotifier(Context context, NotificationMetrics metrics, long minInterval) {
+        this.context = context;
+        this.metrics = metrics;
+        this.minInterval = Math.max(0, minInterval);
+    }
+
+    /**
+     * Removes a notification left behind by a process that was killed while
+     * it was showing. Never blocks.
+     */
+    void removeLeftover() {
+        manager().cancel(NOTIFICATION_ID);
+    }
+
+    /**
+     * True on versions where the notification can show a progress bar.
+     */
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+    }
+
+    /**
+     * Posts the notification, replacing the one showing if any.
+     *
+     * @param text      Message of the dialog, or its per task breakdown
+     */
+    void show(String title, String text, int percent) {
+        synchronized (this) {
+            this.title = title;
+            this.text = text;
+            this.percent = percent;
+        }
+        active = true;
+        schedule();
+    }
+
+    /**
+     * Stores a new value, posted once the interval since the last one is
+     * over. Does nothing unless the notification is showing. Never blocks.
+     */
+    void update(String text, int percent) {
+        if (!active) {
+            return;
+        }
+        synchronized (this) {
+            this.text = text;
+            this.percent = percent;
+        }
+        schedule();
+    }
+
+    /**
+     * Removes the notification. Never blocks.
+     */
+    void cancel() {
+        if (active) {
+            active = false;
+            handler.post(remove);
+        }
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            handler.post(post);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void notifyNow() {
+        String title;
+        String text;
+        int percent;
+        synchronized (this) {
+            title = this.title;
+            text = this.text;
+            percent = this.percent;
+        }
+        android.app.Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            createChannel();
+            builder = createTimedBuilder();
+        } else {
+            builder = new android.app.Notification.Builder(context);
+        }
+        builder.setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setProgress(100, percent, false)
+                .setOnlyAlertOnce(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setBigText(builder, text);
+        }
+        Intent launch = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        if (launch != null) {
+            launch.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                flags |= PendingIntent.FLAG_IMMUTABLE;
+            }
+            builder.setContentIntent(PendingIntent.getActivity(context, 0, launch, flags));
+        }
+        manager().notify(NOTIFICATION_ID, Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? builder.build() : builder.getNotification());
+        metrics.increment(NotificationMetrics.Counter.PROGRESS_NOTIFIED);
+    }
+
+    /** A per task breakdown has several lines, the collapsed view only shows one. */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void setBigText(android.app.Notification.Builder builder, String text) {
+        builder.setStyle(new android.app.Notification.BigTextStyle().bigText(text));
+    }
+
+    /** Ongoing, but gone once no update came for a while, e.g. because the process died. */
+    @TargetApi(Build.VERSION_CODES.O)
+    private android.app.Notification.Builder createTimedBuilder() {
+        return new android.app.Notification.Builder(context, CHANNEL_ID)
+                .setOngoing(true)
+                .setTimeoutAfter(Math.max(STALE_TIMEOUT_MS, minInterval * 2));
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void createChannel() {
+        if (!channelCreated) {
+            channelCreated = true;
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Progress", NotificationManager.IMPORTANCE_LOW);
+            channel.setShowBadge(false);
+            manager().createNotificationChannel(channel);
+        }
+    }
+
+    private NotificationManager manager() {
+        return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import android.content.Context;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.EditText;
+
+/**
+ * The text field of a prompt, shared by the window and overlay renderers.
+ *
+ * The input is validated natively while it is typed and, for streaming
+ * prompts, sent to JS at most once per stream interval, always the latest
+ * text. UI thread only.
+ */
+final class PromptInput implements TextWatcher {
+
+    /**
+     * Enables and disables the buttons listed in validateButtons.
+     */
+    interface Buttons {
+        void setEnabled(int buttonIndex, boolean enabled);
+    }
+
+    final EditText view;
+    private final Handler handler;
+    private final Buttons buttons;
+    private DialogRequest request;
+
+    /** Last input streamed to JS, and whether a stream update is pending. */
+    private String streamedInput;
+    private boolean streamPending;
+
+    private final Runnable streamInput = new Runnable() {
+        public void run() {
+            streamPending = false;
+            if (request == null) {
+                return;
+            }
+            String text = view.getText().toString();
+            if (!text.equals(streamedInput)) {
+                streamedInput = text;
+                request.sendInput(text);
+            }
+        }
+    };
+
+    PromptInput(Context context, Handler handler, Buttons buttons) {
+        this.handler = handler;
+        this.buttons = buttons;
+        this.view = new EditText(context);
+        this.view.addTextChangedListener(this);
+    }
+
+    /**
+     * Resets the field for a prompt, or hides it for any other request.
+     * Call once the buttons are bound, they may be disabled right away.
+     */
+    void bind(DialogRequest request) {
+        this.request = null;
+        if (request.kind != DialogRequest.PROMPT) {
+            view.setVisibility(View.GONE);
+            return;
+        }
+        view.setText("");
+        view.setHint(request.defaultText);
+        view.setVisibility(View.VISIBLE);
+        this.request = request;
+        this.streamedInput = "";
+        validate(view.getText());
+    }
+
+    /**
+     * Stops streaming and returns the text to report with the final result,
+     * or null if the request is not a prompt.
+     */
+    String finish() {
+        // The final result carries the input, a pending stream update is stale.
+        handler.removeCallbacks(streamInput);
+        streamPending = false;
+        if (request == null) {
+            return null;
+        }
+        request = null;
+        return view.getText().toString();
+    }
+
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    public void afterTextChanged(Editable s) {
+        if (request == null) {
+            return;
+        }
+        validate(s);
+        if (request.streamInterval >= 0 && !streamPending) {
+            streamPending = true;
+            handler.postDelayed(streamInput, request.streamInterval);
+        }
+    }
+
+    private void validate(CharSequence text) {
+        if (request.validation == null) {
+            return;
+        }
+        boolean valid = request.isValid(text);
+        for (int buttonIndex : request.validatedButtons) {
+            buttons.setEnabled(buttonIndex, valid);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.text.Editable;
+import android.text.InputType;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.CheckedTextView;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+
+/**
+ * The list of a select dialog, shared by the window and overlay renderers.
+ *
+ * Rows are recycled by a ListView, so only the visible items ever get a
+ * view, however many items there are. Items can be appended while the
+ * dialog is open; the filter field narrows the list natively, matching
+ * the text anywhere in the label, case insensitively. UI thread only.
+ */
+final class SelectList extends BaseAdapter {
+
+    /** Height of the list, as a share of the screen height. */
+    private static final float HEIGHT = 0.5f;
+
+    /**
+     * The items of one select request and which of them are selected.
+     * Kept by the request, so the selection survives the dialog being
+     * rebuilt after a configuration change. Built on the bridge thread,
+     * UI thread only afterwards.
+     */
+    static final class Items {
+        final boolean multiple;
+        final boolean filterable;
+        private final List<String> labels = new ArrayList<String>();
+        private final BitSet selected = new BitSet();
+        private SelectList list;
+
+        /**
+         * @param items     Labels of the first items, may be null
+         * @param options   multiple, filter and selected (indexes), may be null
+         */
+        Items(JSONArray items, JSONObject options) {
+            this.multiple = options != null && options.optBoolean("multiple", false);
+            this.filterable = options == null || options.optBoolean("filter", true);
+            add(items);
+            JSONArray indexes = options == null ? null : options.optJSONArray("selected");
+            if (indexes != null) {
+                for (int i = 0; i < indexes.length() && (multiple || i < 1); i++) {
+                    int index = indexes.optInt(i, -1);
+                    if (index >= 0) {
+                        selected.set(index);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Appends items, and shows them right away if the list is on screen.
+         */
+        void append(JSONArray items) {
+            add(items);
+            if (list != null) {
+                list.onAppended();
+            }
+        }
+
+        int size() {
+            return labels.size();
+        }
+
+        /** Indexes of the selected items, in ascending order. */
+        JSONArray selection() {
+            JSONArray indexes = new JSONArray();
+            for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+                indexes.put(i);
+            }
+            return indexes;
+        }
+
+        private void add(JSONArray items) {
+            if (items == null) {
+                return;
+            }
+            for (int i = 0; i < items.length(); i++) {
+                labels.add(items.optString(i));
+            }
+        }
+
+        private void toggle(int index) {
+            if (multiple) {
+                selected.flip(index);
+            } else {
+                selected.clear();
+                selected.set(index);
+            }
+        }
+    }
+
+    final LinearLayout view;
+    private final Context context;
+    private final EditText filterInput;
+    private final ListView list;
+    private Items items;
+
+    /** Item indexes matching the filter, in order; all items while the filter is empty. */
+    private int[] matches = new int[0];
+    private int matchCount;
+
+    /** Number of items already checked against the filter. */
+    private int scanned;
+    private String filter = "";
+
+    private final TextWatcher filterWatcher = new TextWatcher() {
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        public void afterTextChanged(Editable s) {
+            if (items != null) {
+                filter = s.toString();
+                matchCount = 0;
+                scanned = 0;
+                scan();
+                notifyDataSetChanged();
+            }
+        }
+    };
+
+    SelectList(Context context) {
+        this.context = context;
+        this.view = new LinearLayout(context);
+        this.view.setOrientation(LinearLayout.VERTICAL);
+
+        this.filterInput = new EditText(context);
+        this.filterInput.setSingleLine(true);
+        this.filterInput.setInputType(InputType.TYPE_CLASS_TEXT);
+        this.filterInput.setHint("Filter");
+        this.filterInput.addTextChangedListener(filterWatcher);
+        this.view.addView(this.filterInput);
+
+        this.list = new ListView(context);
+        this.list.setLayoutParams(new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                (int) (context.getResources().getDisplayMetrics().heightPixels * HEIGHT)));
+        this.list.setAdapter(this);
+        this.list.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            public void onItemClick(AdapterView<?> parent, View row, int position, long id) {
+                if (items != null) {
+                    items.toggle(matches[position]);
+                    notifyDataSetChanged();
+                }
+            }
+        });
+        this.view.addView(this.list);
+        this.view.setVisibility(View.GONE);
+    }
+
+    /**
+     * Sets a key listener on the filter field.
+     */
+    void setOnKeyListener(View.OnKeyListener keyListener) {
+        filterInput.setOnKeyListener(keyListener);
+    }
+
+    /**
+     * Shows the items of a select request, or hides the view for any other request.
+     */
+    void bind(DialogRequest request) {
+        unbind();
+        if (request.items == null) {
+            view.setVisibility(View.GONE);
+            return;
+        }
+        items = request.items;
+        items.list = this;
+        filterInput.setText("");
+        filterInput.setVisibility(items.filterable ? View.VISIBLE : View.GONE);
+        filter = "";
+        scan();
+        notifyDataSetChanged();
+        list.setSelection(0);
+        view.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Returns the indexes of the selected items, or null if the request is
+     * not a select. The list no longer follows the request afterwards.
+     */
+    JSONArray finish() {
+        if (items == null) {
+            return null;
+        }
+        JSONArray selection = items.selection();
+        unbind();
+        return selection;
+    }
+
+    private void unbind() {
+        if (items != null) {
+            items.list = null;
+            items = null;
+        }
+        matchCount = 0;
+        scanned = 0;
+        notifyDataSetChanged();
+    }
+
+    private void onAppended() {
+        scan();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Checks the items not seen yet against the filter. Appended items are
+     * only ever scanned once, so streaming a long list costs no more than
+     * filtering it in one go.
+     */
+    private void scan() {
+        int size = items.size();
+        if (matches.length < size) {
+            int[] grown = new int[Math.max(size, matches.length * 2)];
+            System.arraycopy(matches, 0, grown, 0, matchCount);
+            matches = grown;
+        }
+        for (; scanned < size; scanned++) {
+            if (filter.length() == 0 || contains(items.labels.get(scanned), filter)) {
+                matches[matchCount++] = scanned;
+            }
+        }
+    }
+
+    private static boolean contains(String label, String filter) {
+        int last = label.length() - filter.length();
+        for (int i = 0; i <= last; i++) {
+            if (label.regionMatches(true, i, filter, 0, filter.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getCount() {
+        return matchCount;
+    }
+
+    public Object getItem(int position) {
+        return items.labels.get(matches[position]);
+    }
+
+    public long getItemId(int position) {
+        return matches[position];
+    }
+
+    /** Single and multiple choice rows look different and are recycled separately. */
+    public int getViewTypeCount() {
+        return 2;
+    }
+
+    public int getItemViewType(int position) {
+        return items.multiple ? 1 : 0;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        CheckedTextView row = (CheckedTextView) convertView;
+        if (row == null) {
+            row = (CheckedTextView) LayoutInflater.from(context).inflate(items.multiple
+                    ? android.R.layout.simple_list_item_multiple_choice
+                    : android.R.layout.simple_list_item_single_choice, parent, false);
+        }
+        int index = matches[position];
+        row.setText(items.labels.get(index));
+        row.setChecked(items.selected.get(index));
+        return row;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * NotificationMetrics on the JVM: counters and histograms recorded from
+ * several threads at once.
+ */
+public class NotificationMetricsTest {
+
+    private static final int THREADS = 8;
+    private static final int RECORDS = 10000;
+
+    @Test
+    public void histogramReportsPercentilesAsBucketBounds() throws Exception {
+        NotificationMetrics metrics = new NotificationMetrics();
+        for (int i = 1; i <= 100; i++) {
+            // 1 to 100 ms.
+            metrics.record("alert", NotificationMetrics.Stage.TOTAL, 1, 1 + i * 1000000L);
+        }
+        JSONObject total = metrics.toJSON().getJSONObject("actions").getJSONObject("alert").getJSONObject("total");
+        assertEquals(100, total.getLong("count"));
+        assertEquals(50.5, total.getDouble("mean"), 0.001);
+        assertEquals(100.0, total.getDouble("max"), 0.001);
+        // 50 ms falls into the bucket ending at 2^16 us.
+        assertEquals(65.536, total.getDouble("p50"), 0.001);
+        assertEquals(100.0, total.getDouble("p99"), 0.001);
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws Exception {
+        final NotificationMetrics metrics = new NotificationMetrics();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < RECORDS; i++) {
+                            // Thread t records t + 1 ms, so the max is known.
+                            metrics.record("confirm", NotificationMetrics.Stage.UI_TO_SHOWN, 1, 1 + (thread + 1) * 1000000L);
+                            metrics.recordCall("confirm", NotificationMetrics.now());
+                            metrics.increment(NotificationMetrics.Counter.RESULTS_SENT);
+                            metrics.add(NotificationMetrics.Counter.PROGRESS_RECEIVED, 2);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        JSONObject json = metrics.toJSON();
+        JSONObject confirm = json.getJSONObject("actions").getJSONObject("confirm");
+        assertEquals(THREADS * RECORDS, confirm.getLong("calls"));
+        assertEquals(THREADS * RECORDS, confirm.getJSONObject("execute").getLong("count"));
+        JSONObject shown = confirm.getJSONObject("uiToShown");
+        assertEquals(THREADS * RECORDS, shown.getLong("count"));
+        assertEquals(THREADS, shown.getDouble("max"), 0.001);
+        assertEquals((THREADS + 1) / 2.0, shown.getDouble("mean"), 0.001);
+        JSONObject counters = json.getJSONObject("counters");
+        assertEquals(THREADS * RECORDS, counters.getLong("resultsSent"));
+        assertEquals(2L * THREADS * RECORDS, counters.getLong("progressReceived"));
+    }
+}
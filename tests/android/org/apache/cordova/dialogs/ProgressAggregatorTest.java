@@ -0,0 +1,166 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.dialogs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * ProgressAggregator on the JVM: the aggregated value, and writers and
+ * readers on several threads at once.
+ */
+public class ProgressAggregatorTest {
+
+    private static final int THREADS = 8;
+    private static final int STEPS = 2000;
+
+    @Test
+    public void valueSetsTheImplicitTask() throws Exception {
+        ProgressAggregator tasks = new ProgressAggregator();
+        tasks.value(40);
+        assertEquals(40, tasks.percent());
+        assertNull(tasks.breakdown());
+    }
+
+    @Test
+    public void tasksWithTotalsAreWeightedByTheirTotal() throws Exception {
+        ProgressAggregator tasks = new ProgressAggregator();
+        tasks.reset(1, "Download", null);
+        tasks.add(2, "Download", null);
+        tasks.update(new JSONObject()
+                .put("1", new JSONObject().put("bytes", 300).put("total", 300))
+                .put("2", new JSONObject().put("bytes", 0).put("total", 100)));
+        assertEquals(75, tasks.percent());
+        assertFalse(tasks.complete(1));
+        assertTrue(tasks.complete(2));
+        assertEquals(100, tasks.percent());
+    }
+
+    @Test
+    public void updatesOfUnknownOrInvalidTasksAreIgnored() throws Exception {
+        ProgressAggregator tasks = new ProgressAggregator();
+        tasks.reset(1, "Sync", new JSONObject().put("breakdown", true).put("label", "Photos"));
+        tasks.update(new JSONObject()
+                .put("1", new JSONObject().put("value", 50))
+                .put("7", new JSONObject().put("value", 100))
+                .put("photos", new JSONObject().put("value", 100)));
+        assertEquals(50, tasks.percent());
+        assertEquals("Sync\nPhotos: 50%", tasks.breakdown());
+    }
+
+    /**
+     * Every thread adds its own task and raises it to 100 in steps, while
+     * readers check that the value never goes back. No task and no final
+     * value may be lost to a concurrent write.
+     */
+    @Test
+    public void concurrentUpdatesAreNeitherLostNorSeenOutOfOrder() throws Exception {
+        final ProgressAggregator tasks = new ProgressAggregator();
+        tasks.reset(0, "Stress", new JSONObject().put("breakdown", true));
+        tasks.complete(0);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger writersLeft = new AtomicInteger(THREADS);
+        final AtomicInteger lastComplete = new AtomicInteger();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 1; t <= THREADS; t++) {
+            final int id = t;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        tasks.add(id, "Task " + id, null);
+                        for (int step = 1; step <= STEPS; step++) {
+                            int value = step * 100 / STEPS;
+                            tasks.update(new JSONObject().put(String.valueOf(id), new JSONObject().put("value", value)));
+                        }
+                        if (tasks.complete(id)) {
+                            lastComplete.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    } finally {
+                        writersLeft.decrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        // A task is added at 0 and only raised afterwards, so
+                        // the value may drop when a task is added, and may only
+                        // grow once every task has been added. The breakdown
+                        // is read first: tasks are never removed, so the value
+                        // read after it covers every task too.
+                        int previous = -1;
+                        while (writersLeft.get() > 0) {
+                            boolean allAdded = tasks.breakdown().split("\n").length == THREADS + 2;
+                            int percent = tasks.percent();
+                            if (percent < 0 || percent > 100) {
+                                throw new AssertionError("Out of range: " + percent);
+                            }
+                            if (allAdded) {
+                                if (percent < previous) {
+                                    throw new AssertionError("Went back from " + previous + " to " + percent);
+                                }
+                                previous = percent;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(100, tasks.percent());
+        // The message and one line per task: task 0 and one per thread.
+        assertEquals(THREADS + 2, tasks.breakdown().split("\n").length);
+        // At least the thread completing the last task sees every task complete.
+        assertTrue(lastComplete.get() >= 1);
+    }
+}
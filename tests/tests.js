@@ -19,6 +19,206 @@
  *
 */
 
+/******************************************************************************/
+/* Android benchmark and stress harness                                       */
+/*                                                                            */
+/* Runs on the device through cordova-paramedic or the manual test page.      */
+/* Benchmark results are logged as one JSON line prefixed with                */
+/* BENCHMARK_PREFIX so they can be collected from logcat and compared         */
+/* between releases.                                                          */
+/******************************************************************************/
+
+var BENCHMARK_PREFIX = "[cordova-plugin-dialogs] benchmark ";
+
+var now = function () {
+    return (window.performance && typeof window.performance.now === 'function') ? window.performance.now() : Date.now();
+};
+
+var summarize = function (name, samples) {
+    var sorted = samples.slice().sort(function (a, b) { return a - b; });
+    var sum = 0;
+    for (var i = 0; i < sorted.length; i++) {
+        sum += sorted[i];
+    }
+    var at = function (q) {
+        return sorted.length ? sorted[Math.min(sorted.length - 1, Math.floor(q * sorted.length))] : 0;
+    };
+    return {
+        name: name,
+        samples: sorted.length,
+        mean: sorted.length ? sum / sorted.length : 0,
+        p50: at(0.5),
+        p95: at(0.95),
+        max: sorted.length ? sorted[sorted.length - 1] : 0
+    };
+};
+
+// Times `iterations` sequential runs of `step`, which calls its argument when done.
+var timeSequential = function (name, iterations, step, callback) {
+    var samples = [];
+    var next = function () {
+        if (samples.length === iterations) {
+            callback(summarize(name, samples));
+            return;
+        }
+        var start = now();
+        step(function () {
+            samples.push(now() - start);
+            next();
+        });
+    };
+    next();
+};
+
+var benchmarks = [
+    function (callback) {
+        // Bridge round trip of the cheapest action: an empty batch.
+        timeSequential("execute.dispatch", 200, function (done) {
+            cordova.exec(done, done, "Notification", "batch", [[]]);
+        }, callback);
+    },
+    function (callback) {
+        // Start and stop a spinner in one call, the dialog is never built.
+        timeSequential("indicator.startStop", 50, function (done) {
+            navigator.notification.batch().activityStart("Benchmark", "Running").activityStop().run(done, done);
+        }, callback);
+    },
+    function (callback) {
+        // Bridge call to dialog shown. The round trip also includes the
+        // timeout, so the native stages are read from the metrics, reset
+        // first so they only hold this benchmark.
+        navigator.notification.resetMetrics();
+        timeSequential("dialog.shown", 20, function (done) {
+            navigator.notification.confirm("Benchmark", done, "Benchmark", ["OK"], { timeout: 1 });
+        }, function (result) {
+            navigator.notification.getMetrics(function (metrics) {
+                var confirm = metrics.actions.confirm || {};
+                result.bridgeToUi = confirm.bridgeToUi;
+                result.uiToShown = confirm.uiToShown;
+                callback(result);
+            });
+        });
+    },
+    function (callback) {
+        // Cost of the JS side of progressValue, which is throttled to one
+        // bridge call per frame.
+        navigator.notification.progressStart("Benchmark", "progressValue");
+        var calls = 5000;
+        var start = now();
+        for (var i = 0; i < calls; i++) {
+            navigator.notification.progressValue(i % 101);
+        }
+        var elapsed = now() - start;
+        navigator.notification.batch().progressStop().run(function () {
+            var result = summarize("progressValue.jsCall", [elapsed / calls]);
+            result.callsPerSecond = elapsed > 0 ? Math.round(calls * 1000 / elapsed) : calls;
+            callback(result);
+        });
+    },
+    function (callback) {
+        // Scheduling overhead of beep: time to completion beyond the nominal intervals.
+        var count = 2, interval = 50;
+        timeSequential("beep.scheduling", 5, function (done) {
+            navigator.notification.beep(count, done, interval);
+        }, function (result) {
+            result.nominal = count * interval;
+            callback(result);
+        });
+    }
+];
+
+var runBenchmarks = function (callback) {
+    var report = { platform: cordova.platformId, timestamp: new Date().toISOString(), results: [] };
+    var index = 0;
+    var next = function () {
+        if (index === benchmarks.length) {
+            console.log(BENCHMARK_PREFIX + JSON.stringify(report));
+            callback(report);
+            return;
+        }
+        benchmarks[index++](function (result) {
+            report.results.push(result);
+            next();
+        });
+    };
+    next();
+};
+
+// Interleaves start, stop and value operations from several workers. The
+// workers only interleave their calls on the JavaScript thread and Cordova
+// runs the plugin's calls one after the other, so this covers ordering and
+// lost results across the bridge, not concurrent calls into the plugin.
+//
+// Every batch asks for a result. The callback receives the number of
+// batches whose result never arrived within the timeout (lost), of
+// operations reported as failed or missing from their batch's result
+// (failed), the result of the cleanup, and what the metrics report as
+// still open after it (open).
+var runStress = function (workers, iterations, timeout, callback) {
+    var expected = workers * iterations;
+    var received = 0;
+    var failed = 0;
+    var finished = false;
+
+    var finish = function () {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        navigator.notification.batch().activityStop().progressStop().beepStop().run(function (results) {
+            navigator.notification.getMetrics(function (metrics) {
+                callback({ expected: expected, lost: expected - received, failed: failed, cleanup: results, open: metrics.open });
+            });
+        });
+    };
+
+    var onResult = function (results) {
+        received++;
+        // Every batch runs two operations.
+        failed += Math.max(0, 2 - results.length);
+        for (var i = 0; i < results.length; i++) {
+            if (results[i] !== true) {
+                failed++;
+            }
+        }
+        if (received === expected) {
+            finish();
+        }
+    };
+
+    var operations = [
+        function (batch, i) { return batch.activityStart("Stress", "Worker " + i); },
+        function (batch) { return batch.activityStop(); },
+        function (batch, i) { return batch.progressStart("Stress", "Worker " + i); },
+        function (batch, i) { return batch.progressValue(i % 101); },
+        function (batch) { return batch.progressStop(); }
+    ];
+
+    var worker = function (w) {
+        var i = 0;
+        var step = function () {
+            if (i === iterations) {
+                return;
+            }
+            var batch = navigator.notification.batch();
+            operations[(w + i) % operations.length](batch, i);
+            operations[(w + 3 * i) % operations.length](batch, i);
+            batch.run(onResult, function () {
+                received++;
+                failed++;
+            });
+            i++;
+            setTimeout(step, 0);
+        };
+        step();
+    };
+
+    for (var w = 0; w < workers; w++) {
+        worker(w);
+    }
+    setTimeout(finish, timeout);
+};
+
 exports.defineAutoTests = function () {
     describe('Notification (navigator.notification)', function () {
         it("should exist", function () {
@@ -44,6 +244,189 @@ exports.defineAutoTests = function () {
             expect(typeof navigator.notification.prompt).toBeDefined();
             expect(typeof navigator.notification.prompt).toBe("function");
         });
+
+        if (cordova.platformId == "android") {
+            it("should contain a batch function on Android", function () {
+                expect(typeof navigator.notification.batch).toBe("function");
+            });
+
+            it("should report metrics for the actions that were called", function (done) {
+                navigator.notification.resetMetrics();
+                navigator.notification.batch().activityStop().run(function () {
+                    navigator.notification.getMetrics(function (metrics) {
+                        expect(metrics.actions.batch.calls).toBeGreaterThan(0);
+                        expect(metrics.actions.batch.execute.count).toBeGreaterThan(0);
+                        expect(typeof metrics.counters.progressCoalesced).toBe("number");
+                        expect(metrics.startup.initialize).toBeGreaterThan(0);
+                        done();
+                    });
+                });
+            });
+
+            it("should run a batch and report each operation", function (done) {
+                navigator.notification.batch()
+                    .activityStart("Busy", "Please wait...")
+                    .activityStop()
+                    .add("alert", [])
+                    .run(function (results) {
+                        expect(results.length).toBe(3);
+                        expect(results[0]).toBe(true);
+                        expect(results[1]).toBe(true);
+                        expect(typeof results[2]).toBe("string");
+                        done();
+                    });
+            });
+
+            it("should resolve an unanswered dialog with -2 once its timeout is over", function (done) {
+                navigator.notification.confirm("Timeout test", function (buttonIndex) {
+                    expect(buttonIndex).toBe(-2);
+                    done();
+                }, "Timeout", ["OK", "Cancel"], { timeout: 200 });
+            });
+
+            it("should resolve a dialog still queued when its timeout is over with -2", function (done) {
+                var queuedResult = null;
+                navigator.notification.confirm("Blocking test", function (buttonIndex) {
+                    expect(buttonIndex).toBe(-2);
+                    expect(queuedResult).toBe(-2);
+                    done();
+                }, "Blocking", ["OK", "Cancel"], { timeout: 1500 });
+                navigator.notification.confirm("Queued test", function (buttonIndex) {
+                    queuedResult = buttonIndex;
+                }, "Queued", ["OK", "Cancel"], { timeout: 200 });
+            });
+
+            it("should show a large message before a dialog called after it", function (done) {
+                var order = [];
+                var message = new Array(5001).join("Lorem ipsum dolor sit amet.\n");
+                navigator.notification.confirm(message, function () {
+                    order.push("large");
+                }, "Large Message", ["OK", "Cancel"], { timeout: 200 });
+                navigator.notification.confirm("Short", function () {
+                    order.push("short");
+                    expect(order).toEqual(["large", "short"]);
+                    done();
+                }, "Short", ["OK", "Cancel"], { timeout: 1000 });
+            }, 10000);
+
+            it("should resolve an unanswered large message with -2 like any other dialog", function (done) {
+                var message = new Array(5001).join("Lorem ipsum dolor sit amet.\n");
+                navigator.notification.confirm(message, function (buttonIndex) {
+                    expect(buttonIndex).toBe(-2);
+                    done();
+                }, "Large Message", ["OK", "Cancel"], { timeout: 200 });
+            });
+
+            it("should contain a form function on Android", function () {
+                expect(typeof navigator.notification.form).toBe("function");
+            });
+
+            it("should resolve an unanswered form with -2 and the values by field name", function (done) {
+                navigator.notification.form("Form test", function (results) {
+                    expect(results.buttonIndex).toBe(-2);
+                    expect(results.values).toEqual({ name: "x", age: 42, agree: false });
+                    done();
+                }, "Form", [
+                    { name: "name", type: "text", value: "x" },
+                    { name: "age", type: "number", value: "42" },
+                    { name: "agree", type: "checkbox" }
+                ], ["OK", "Cancel"], { timeout: 200 });
+            });
+
+            it("should resolve an unanswered select with -2 and an array of indexes", function (done) {
+                var list = navigator.notification.select("Select test", function (results) {
+                    expect(results.buttonIndex).toBe(-2);
+                    expect(Array.isArray(results.indexes)).toBe(true);
+                    done();
+                }, "Select", ["One", "Two"], null, { timeout: 200 });
+                expect(typeof list.append).toBe("function");
+                list.append(["Three"]);
+            });
+
+            it("should return a distinct task id from each progressStart", function (done) {
+                var a = navigator.notification.progressStart("Tasks", "First", { showDelay: 10000 });
+                var b = navigator.notification.progressStart("Tasks", "Second", { join: true, weight: 2 });
+                expect(typeof a).toBe("number");
+                expect(typeof b).toBe("number");
+                expect(b).not.toBe(a);
+                navigator.notification.progressValue(a, { bytes: 50, total: 100 });
+                navigator.notification.progressValue(b, 25);
+                navigator.notification.progressStop(a);
+                navigator.notification.progressStop(b);
+                navigator.notification.getMetrics(function (metrics) {
+                    expect(metrics.actions.progressStart.calls).toBeGreaterThan(1);
+                    done();
+                });
+            });
+
+            it("should address progress tasks by id in a batch", function (done) {
+                var batch = navigator.notification.batch()
+                    .progressStart("Tasks", "First", { showDelay: 10000 })
+                    .progressStart("Tasks", "Second", { join: true });
+                expect(batch.progressIds.length).toBe(2);
+                expect(batch.progressIds[1]).not.toBe(batch.progressIds[0]);
+                batch.progressValue(batch.progressIds[0], 50)
+                    .progressValue(batch.progressIds[1], { bytes: 10, total: 100 })
+                    .progressStop(batch.progressIds[0])
+                    .progressStop(batch.progressIds[1])
+                    .run(function (results) {
+                        expect(results).toEqual([true, true, true, true, true, true]);
+                        done();
+                    });
+            });
+
+            it("should contain a notify function on Android", function () {
+                expect(typeof navigator.notification.notify).toBe("function");
+            });
+
+            it("should resolve a notice with 0 once it hides itself", function (done) {
+                navigator.notification.notify("Notice", function (buttonIndex) {
+                    expect(buttonIndex).toBe(0);
+                    done();
+                }, { duration: 100 });
+            });
+
+            it("should never show a delayed spinner that is stopped early", function (done) {
+                navigator.notification.resetMetrics();
+                navigator.notification.activityStart("Busy", "Please wait...", { showDelay: 5000 });
+                setTimeout(function () {
+                    navigator.notification.activityStop();
+                    setTimeout(function () {
+                        navigator.notification.getMetrics(function (metrics) {
+                            expect(metrics.counters.indicatorsSkipped).toBe(1);
+                            expect(metrics.actions.activityStart.uiToShown).toBeUndefined();
+                            done();
+                        });
+                    }, 200);
+                }, 200);
+            });
+        }
+    });
+
+    describe('Notification stress and benchmark (Android)', function () {
+        if (cordova.platformId != "android") {
+            return;
+        }
+
+        it("should resolve every callback when start, stop and value are interleaved", function (done) {
+            runStress(8, 50, 20000, function (result) {
+                expect(result.lost).toBe(0);
+                expect(result.failed).toBe(0);
+                expect(result.cleanup).toEqual([true, true, true]);
+                expect(result.open).toEqual({ dialogs: 0, activity: false, progress: false });
+                done();
+            });
+        }, 30000);
+
+        it("should run the benchmarks and report every result", function (done) {
+            runBenchmarks(function (report) {
+                expect(report.results.length).toBe(benchmarks.length);
+                for (var i = 0; i < report.results.length; i++) {
+                    expect(report.results[i].samples).toBeGreaterThan(0);
+                }
+                done();
+            });
+        }, 60000);
     });
 };
 
@@ -145,6 +528,24 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         'Expected result: Dialog will say "You pressed confirm". Press Yes, No, or Maybe, Not Sure to close dialog. Status box will tell you what option you selected, and should use 1-based indexing.' +
         '<p/> <div id="prompt"></div>' +
         'Expected result: Dialog will say "You pressed prompt". Enter any message and press Yes, No, or Maybe, Not Sure to close dialog. Status box will tell you what option you selected and message you entered, and should use 1-based indexing.' +
+        '<p/> <div id="streaming_prompt"></div>' +
+        'Expected result (Android): Dialog will say "Enter up to 4 digits.". Status box will show the input while you type. OK is disabled unless the input is 1 to 4 digits.' +
+        '<p/> <div id="form"></div>' +
+        'Expected result (Android): Dialog will show a user name, a password, a quantity and a checkbox. OK is disabled until a user name and a quantity from 1 to 99 are entered. Status box will show all values.' +
+        '<p/> <div id="large_message"></div>' +
+        'Expected result (Android): Dialog opens without a noticeable pause and shows a scrolling list of numbered lines, up to line 1400 or so, with a "Show more" button at the end that adds the next lines. Close dismisses it.' +
+        '<p/> <div id="select"></div>' +
+        'Expected result (Android): Dialog opens at once and 10000 stores are streamed into it in pages of 100; scrolling stays smooth. Typing in the filter narrows the list. Status box will show the selected indexes.' +
+        '<p/> <div id="parallel_progress"></div>' +
+        'Expected result (Android): One progress dialog for three downloads, with a line per download under the message. The bar follows the bytes of all three and the dialog closes when the last one is done.' +
+        '<p/> <div id="background_progress"></div>' +
+        'Expected result (Android): A progress dialog fills up over 30 seconds. Leave the app: a notification shows the same progress, updated about once a second. Come back: the notification goes away and the dialog shows the current value.' +
+        '<p/> <div id="notice"></div>' +
+        'Expected result (Android): A notice saying "Message deleted" with an Undo button shows at the bottom of the screen without blocking the page. Status box will say whether Undo was tapped.' +
+        '<p/> <div id="benchmark"></div>' +
+        'Expected result (Android): A spinner, a confirm dialog and a progress dialog may flash and the device beeps. Status box shows the mean and p95 time of each benchmark. The full report is logged as JSON.' +
+        '<p/> <div id="stress"></div>' +
+        'Expected result (Android): Dialogs may flash. Status box will say PASSED: no results were lost or failed and nothing was left open.' +
         '<p/> <div id="built_in_alert"></div>' +
         'Expected result: Dialog will have title "index.html" and say "You pressed alert" Press OK to close dialog. Nothing will get updated in status box.' +
         '<p/> <div id="built_in_confirm"></div>' +
@@ -180,6 +581,133 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         promptDialog('You pressed prompt.', 'Prompt Dialog', ['Yes', 'No', 'Maybe, Not Sure']);
     }, 'prompt');
 
+    createActionButton('Streaming Prompt', function () {
+        clearLog();
+        navigator.notification.prompt('Enter up to 4 digits.', function (r) {
+            if (r.event === 'input') {
+                logMessage("Input: " + r.input1 + (r.valid ? "" : " (invalid)"));
+            } else {
+                logMessage("You selected " + r.buttonIndex + " and entered: " + r.input1);
+            }
+        }, 'Streaming Prompt', ['OK', 'Cancel'], '', { stream: true, pattern: '[0-9]{1,4}' });
+    }, 'streaming_prompt');
+
+    createActionButton('Form Dialog', function () {
+        clearLog();
+        navigator.notification.form('Enter your order.', function (r) {
+            logMessage("You selected " + r.buttonIndex + " and entered: " + JSON.stringify(r.values));
+        }, 'Form Dialog', [
+            { name: 'user', label: 'User', required: true },
+            { name: 'password', type: 'password', label: 'Password' },
+            { name: 'quantity', type: 'number', label: 'Quantity', required: true, min: 1, max: 99, error: '1 to 99' },
+            { name: 'express', type: 'checkbox', label: 'Express delivery' }
+        ], ['OK', 'Cancel']);
+    }, 'form');
+
+    createActionButton('Large Message', function () {
+        clearLog();
+        var lines = [];
+        for (var i = 1; i <= 20000; i++) {
+            lines.push(i + ". The quick brown fox jumps over the lazy dog.");
+        }
+        navigator.notification.alert(lines.join('\n'), function () {
+            logMessage("Large message dismissed");
+        }, 'Large Message', 'Close');
+    }, 'large_message');
+
+    createActionButton('Select', function () {
+        clearLog();
+        var page = function (start) {
+            var items = [];
+            for (var i = start; i < start + 100; i++) {
+                items.push('Store ' + (i + 1));
+            }
+            return items;
+        };
+        var list = navigator.notification.select('Pick your stores.', function (r) {
+            logMessage("You selected " + r.buttonIndex + " and picked: " + JSON.stringify(r.indexes));
+        }, 'Select', page(0), ['OK', 'Cancel'], { multiple: true });
+        for (var start = 100; start < 10000; start += 100) {
+            list.append(page(start));
+        }
+    }, 'select');
+
+    createActionButton('Parallel Progress', function () {
+        clearLog();
+        var sizes = [ 4000, 1000, 2500 ];
+        var ids = [];
+        for (var i = 0; i < sizes.length; i++) {
+            ids.push(navigator.notification.progressStart('Parallel Progress', 'Downloading...', {
+                join: i > 0,
+                breakdown: true,
+                label: 'File ' + (i + 1)
+            }));
+        }
+        var done = [ 0, 0, 0 ];
+        var timer = setInterval(function () {
+            var running = 0;
+            for (var i = 0; i < sizes.length; i++) {
+                if (done[i] < sizes[i]) {
+                    done[i] = Math.min(sizes[i], done[i] + 25);
+                    navigator.notification.progressValue(ids[i], { bytes: done[i], total: sizes[i] });
+                    if (done[i] === sizes[i]) {
+                        navigator.notification.progressStop(ids[i]);
+                    } else {
+                        running++;
+                    }
+                }
+            }
+            if (running === 0) {
+                clearInterval(timer);
+                logMessage("All downloads done");
+            }
+        }, 20);
+    }, 'parallel_progress');
+
+    createActionButton('Background Progress', function () {
+        clearLog();
+        navigator.notification.progressStart('Background Progress', 'Syncing...', { background: true });
+        var value = 0;
+        var timer = setInterval(function () {
+            value += 1;
+            navigator.notification.progressValue(Math.round(value / 3));
+            if (value >= 300) {
+                clearInterval(timer);
+                navigator.notification.progressStop();
+                logMessage("Sync done");
+            }
+        }, 100);
+    }, 'background_progress');
+
+    createActionButton('Notice', function () {
+        clearLog();
+        navigator.notification.notify('Message deleted', function (buttonIndex) {
+            logMessage(buttonIndex === 1 ? "Undo tapped" : "Notice hidden");
+        }, { action: 'Undo', duration: 4000 });
+    }, 'notice');
+
+    createActionButton('Run Benchmarks', function () {
+        clearLog();
+        logMessage("Running benchmarks...");
+        runBenchmarks(function (report) {
+            for (var i = 0; i < report.results.length; i++) {
+                var r = report.results[i];
+                logMessage(r.name + ": mean " + r.mean.toFixed(2) + " ms, p95 " + r.p95.toFixed(2) + " ms (" + r.samples + " samples)");
+            }
+        });
+    }, 'benchmark');
+
+    createActionButton('Run Stress Test', function () {
+        clearLog();
+        logMessage("Running stress test...");
+        runStress(8, 50, 20000, function (result) {
+            var leaked = result.open.dialogs !== 0 || result.open.activity || result.open.progress;
+            var passed = result.lost === 0 && result.failed === 0 && !leaked;
+            logMessage((passed ? "PASSED" : "FAILED") + ": expected " + result.expected + " results, lost " + result.lost +
+                ", failed " + result.failed + ", left open " + JSON.stringify(result.open));
+        });
+    }, 'stress');
+
     createActionButton('Built-in Alert Dialog', function () {
         typeof alert === 'function' && alert('You pressed alert');
     }, 'built_in_alert');
@@ -21,11 +21,242 @@
 
 var exec = require('cordova/exec');
 
+// Latest progress value that has not been sent to native yet, and the handle
+// of the frame that will send it. Intermediate values are overwritten here so
+// they never cross the bridge.
+var pendingProgressValue = null;
+var progressFrame = null;
+
+// Per task updates waiting for the same frame, by task id, and the id of
+// the next task started by progressStart.
+var pendingProgressUpdates = null;
+var nextProgressId = 1;
+
+// True between the pause and resume events. Animation frames do not fire
+// while the app is in the background, but a progress dialog handed over to
+// a notification still needs its values, so they are sent from a timer then.
+var paused = false;
+var BACKGROUND_FLUSH_INTERVAL = 250;
+
+var isHidden = function() {
+    return paused || document.hidden === true;
+};
+
+var requestFrame = function(callback) {
+    if (typeof window.requestAnimationFrame === 'function' && !isHidden()) {
+        return { frame: window.requestAnimationFrame(callback) };
+    }
+    return { timer: setTimeout(callback, isHidden() ? BACKGROUND_FLUSH_INTERVAL : 16) };
+};
+
+var cancelFrame = function(handle) {
+    if ('frame' in handle) {
+        window.cancelAnimationFrame(handle.frame);
+    } else {
+        clearTimeout(handle.timer);
+    }
+};
+
+var flushProgressValue = function() {
+    progressFrame = null;
+    if (pendingProgressValue !== null) {
+        var value = pendingProgressValue;
+        pendingProgressValue = null;
+        exec(null, null, 'Notification', 'progressValue', [ value ]);
+    }
+    if (pendingProgressUpdates !== null) {
+        // All tasks updated during the frame cross the bridge in one call.
+        var updates = pendingProgressUpdates;
+        pendingProgressUpdates = null;
+        exec(null, null, 'Notification', 'progressUpdate', [ updates ]);
+    }
+};
+
+var scheduleProgressFlush = function() {
+    if (progressFrame === null) {
+        progressFrame = requestFrame(flushProgressValue);
+    }
+};
+
+// A frame requested before the app went to the background would not fire
+// until it comes back: request the flush again from a timer.
+var rescheduleProgressFlush = function() {
+    if (progressFrame !== null && 'frame' in progressFrame) {
+        cancelFrame(progressFrame);
+        progressFrame = null;
+        scheduleProgressFlush();
+    }
+};
+
+document.addEventListener('pause', function() {
+    paused = true;
+    rescheduleProgressFlush();
+}, false);
+document.addEventListener('resume', function() {
+    paused = false;
+}, false);
+document.addEventListener('visibilitychange', rescheduleProgressFlush, false);
+
+var dropProgressValue = function() {
+    if (progressFrame !== null) {
+        cancelFrame(progressFrame);
+        progressFrame = null;
+    }
+    pendingProgressValue = null;
+    pendingProgressUpdates = null;
+};
+
+// Drops the throttled update of one task, e.g. because a later call
+// decides its value.
+var dropProgressUpdate = function(id) {
+    if (pendingProgressUpdates !== null) {
+        delete pendingProgressUpdates[id];
+        if (Object.keys(pendingProgressUpdates).length === 0) {
+            pendingProgressUpdates = null;
+        }
+    }
+};
+
+// Options of progressStart with the id of the new task added, the caller's
+// object is left as is.
+var progressOptions = function(options, id) {
+    var result = { id: id };
+    for (var key in options) {
+        if (options.hasOwnProperty(key)) {
+            result[key] = options[key];
+        }
+    }
+    return result;
+};
+
+// Arguments of activityStart and progressStart, options (showDelay,
+// minVisible) only cross the bridge when given.
+var indicatorArgs = function(title, message, options) {
+    var args = [ title, message ];
+    if (options) {
+        args.push(options);
+    }
+    return args;
+};
+
+// Arguments of notify, options (duration, action) only cross the bridge when given.
+var noticeArgs = function(message, options) {
+    var args = [ message ];
+    if (options) {
+        args.push(options);
+    }
+    return args;
+};
+
+/**
+ * Collects indicator and beep operations to run them with a single bridge
+ * call. Created by navigator.notification.batch(), every method returns the
+ * batch so calls can be chained.
+ */
+var NotificationBatch = function() {
+    this.operations = [];
+    // Ids of the progress tasks started by the batch, in order.
+    this.progressIds = [];
+};
+
+NotificationBatch.prototype.add = function(action, args) {
+    this.operations.push([ action, args ]);
+    return this;
+};
+
+NotificationBatch.prototype.activityStart = function(title, message, options) {
+    if (typeof title === "undefined" && typeof message == "undefined") {
+        title = "Busy";
+        message = 'Please wait...';
+    }
+    return this.add('activityStart', indicatorArgs(title, message, options));
+};
+
+NotificationBatch.prototype.activityStop = function() {
+    return this.add('activityStop', []);
+};
+
+NotificationBatch.prototype.progressStart = function(title, message, options) {
+    var id = nextProgressId++;
+    this.progressIds.push(id);
+    return this.add('progressStart', indicatorArgs(title, message, progressOptions(options, id)));
+};
+
+NotificationBatch.prototype.progressValue = function(value, update) {
+    if (typeof update === "undefined") {
+        return this.add('progressValue', [ value ]);
+    }
+    var updates = {};
+    updates[value] = typeof update === "number" ? { value: update } : update;
+    return this.add('progressUpdate', [ updates ]);
+};
+
+NotificationBatch.prototype.progressStop = function(id) {
+    return this.add('progressStop', typeof id === "number" ? [ id ] : []);
+};
+
+NotificationBatch.prototype.beep = function(count, interval) {
+    return this.add('beep', [ count || 1, interval || 0 ]);
+};
+
+NotificationBatch.prototype.beepStop = function() {
+    return this.add('beepStop', []);
+};
+
+NotificationBatch.prototype.notify = function(message, options) {
+    return this.add('notify', noticeArgs(message, options));
+};
+
+/**
+ * Run the collected operations in order.
+ *
+ * @param {Function}
+ *            successCallback Called with an array holding, for each
+ *            operation, true or an error message.
+ * @param {Function}
+ *            errorCallback Called when the batch could not be run.
+ */
+NotificationBatch.prototype.run = function(successCallback, errorCallback) {
+    // Where the batch decides a progress value, a throttled one sent later
+    // must not override it. Throttled values of other tasks are kept.
+    for (var i = 0; i < this.operations.length; i++) {
+        var action = this.operations[i][0];
+        var args = this.operations[i][1];
+        if (action === 'progressValue') {
+            pendingProgressValue = null;
+        } else if (action === 'progressUpdate') {
+            for (var id in args[0]) {
+                if (args[0].hasOwnProperty(id)) {
+                    dropProgressUpdate(id);
+                }
+            }
+        } else if (action === 'progressStop' && args.length > 0) {
+            dropProgressUpdate(args[0]);
+        } else if (action === 'progressStop' || (action === 'progressStart' && !(args[2] && args[2].join))) {
+            // Every task ends, or starts over.
+            dropProgressValue();
+        }
+    }
+    exec(successCallback || null, errorCallback || null, 'Notification', 'batch', [ this.operations ]);
+};
+
 /**
  * Provides Android enhanced notification API.
  */
 module.exports = {
-    activityStart : function(title, message) {
+    /**
+     * Display a spinner dialog.
+     *
+     * @param {String}
+     *            title Title of the dialog.
+     * @param {String}
+     *            message Message to display in the dialog.
+     * @param {Object}
+     *            options Optional: { showDelay, minVisible } in milliseconds.
+     *            The dialog is only shown once showDelay has passed, and stays
+     *            up for at least minVisible once shown.
+     */
+    activityStart : function(title, message, options) {
         // If title and message not specified then mimic Android behavior of
         // using default strings.
         if (typeof title === "undefined" && typeof message == "undefined") {
@@ -33,7 +264,7 @@ module.exports = {
             message = 'Please wait...';
         }
 
-        exec(null, null, 'Notification', 'activityStart', [ title, message ]);
+        exec(null, null, 'Notification', 'activityStart', indicatorArgs(title, message, options));
     },
 
     /**
@@ -45,30 +276,225 @@ module.exports = {
 
     /**
      * Display a progress dialog with progress bar that goes from 0 to 100.
+     * Every call starts a progress task. With join, the task is added to the
+     * running ones and the dialog shows their aggregated value.
      *
      * @param {String}
      *            title Title of the progress dialog.
      * @param {String}
      *            message Message to display in the dialog.
+     * @param {Object}
+     *            options Optional: { showDelay, minVisible } in milliseconds,
+     *            see activityStart; join, breakdown, background, and label and
+     *            weight of the task.
+     * @return {Number} The id of the task, for progressValue and progressStop.
      */
-    progressStart : function(title, message) {
-        exec(null, null, 'Notification', 'progressStart', [ title, message ]);
+    progressStart : function(title, message, options) {
+        var id = nextProgressId++;
+        if (!(options && options.join)) {
+            dropProgressValue();
+        }
+        exec(null, null, 'Notification', 'progressStart', indicatorArgs(title, message, progressOptions(options, id)));
+        return id;
     },
 
     /**
-     * Close the progress dialog.
+     * Close the progress dialog, or complete one task: the dialog closes
+     * with the last one.
+     *
+     * @param {Number}
+     *            id Optional: the id returned by progressStart.
      */
-    progressStop : function() {
+    progressStop : function(id) {
+        if (typeof id === "number") {
+            dropProgressUpdate(id);
+            exec(null, null, 'Notification', 'progressStop', [ id ]);
+            return;
+        }
+        dropProgressValue();
         exec(null, null, 'Notification', 'progressStop', []);
     },
 
     /**
-     * Set the progress dialog value.
+     * Open a native dialog with several typed fields and return all values
+     * in one result.
+     *
+     * @param {String}
+     *            message Message to display in the dialog.
+     * @param {Function}
+     *            resultCallback Called with { buttonIndex, values }, values
+     *            holding the value of each field by name.
+     * @param {String}
+     *            title Title of the dialog (default: "Form").
+     * @param {Array}
+     *            fields Field descriptions: { name, type, label, hint, value,
+     *            required, pattern, min, max, error }, type being "text",
+     *            "number", "password" or "checkbox".
+     * @param {Array}
+     *            buttonLabels Labels of the buttons (default: ["OK","Cancel"]).
+     * @param {Object}
+     *            options Optional: { priority, timeout, validateButtons }.
+     */
+    form : function(message, resultCallback, title, fields, buttonLabels, options) {
+        var _message = (typeof message === "string" ? message : JSON.stringify(message));
+        var _title = (typeof title === "string" ? title : "Form");
+        var _buttonLabels = (buttonLabels || ["OK", "Cancel"]);
+        var args = [ _message, _title, fields || [], _buttonLabels ];
+        if (options) {
+            args.push(options);
+        }
+        exec(resultCallback, null, 'Notification', 'form', args);
+    },
+
+    /**
+     * Open a native list dialog to pick one or several items. Only the
+     * visible rows are built, so the list may hold thousands of items, and
+     * it can be filtered natively. More items can be appended while the
+     * dialog is open, e.g. as they are loaded:
+     * navigator.notification.select(msg, cb, title, firstPage).append(nextPage);
+     *
+     * @param {String}
+     *            message Message to display in the dialog.
+     * @param {Function}
+     *            resultCallback Called with { buttonIndex, indexes }, indexes
+     *            holding the selected item indexes in ascending order.
+     * @param {String}
+     *            title Title of the dialog (default: "Select").
+     * @param {Array}
+     *            items Labels of the first items.
+     * @param {Array}
+     *            buttonLabels Labels of the buttons (default: ["OK","Cancel"]).
+     * @param {Object}
+     *            options Optional: { multiple, filter, selected, priority,
+     *            timeout }.
+     * @return {Object} A handle whose append(items) adds items to the list.
+     */
+    select : function(message, resultCallback, title, items, buttonLabels, options) {
+        var _message = (typeof message === "string" ? message : JSON.stringify(message));
+        var _title = (typeof title === "string" ? title : "Select");
+        var _buttonLabels = (buttonLabels || ["OK", "Cancel"]);
+        var args = [ _message, _title, items || [], _buttonLabels ];
+        if (options) {
+            args.push(options);
+        }
+        // Items appended before native has sent the id wait here.
+        var id = null;
+        var pending = [];
+        exec(function(result) {
+            if (result && result.event === "opened") {
+                id = result.id;
+                for (var i = 0; i < pending.length; i++) {
+                    exec(null, null, 'Notification', 'selectAppend', [ id, pending[i] ]);
+                }
+                pending = null;
+            } else if (resultCallback) {
+                resultCallback(result);
+            }
+        }, null, 'Notification', 'select', args);
+        return {
+            append : function(moreItems) {
+                if (id === null) {
+                    pending.push(moreItems);
+                } else {
+                    exec(null, null, 'Notification', 'selectAppend', [ id, moreItems ]);
+                }
+                return this;
+            }
+        };
+    },
+
+    /**
+     * Show a short notice at the bottom of the screen. It does not block the
+     * page and hides itself after a while.
+     *
+     * @param {String}
+     *            message Text of the notice.
+     * @param {Function}
+     *            resultCallback Optional: called with 1 if the action was
+     *            tapped, 0 if the notice hid itself or was replaced.
+     * @param {Object}
+     *            options Optional: { duration, action }, duration in
+     *            milliseconds and the label of an action button.
+     */
+    notify : function(message, resultCallback, options) {
+        exec(resultCallback || null, null, 'Notification', 'notify', noticeArgs(message, options));
+    },
+
+    /**
+     * Stop the beeps started by navigator.notification.beep.
+     */
+    beepStop : function() {
+        exec(null, null, 'Notification', 'beepStop', []);
+    },
+
+    /**
+     * Start a batch of indicator and beep operations that are sent to native
+     * in a single call, e.g.
+     * navigator.notification.batch().activityStop().progressStart(t, m).progressValue(10).run();
+     *
+     * progressStart, progressValue and progressStop take the same arguments
+     * as the calls of the same name; the ids of the tasks started by the
+     * batch are in its progressIds array, in order.
+     *
+     * @return {NotificationBatch}
+     */
+    batch : function() {
+        return new NotificationBatch();
+    },
+
+    /**
+     * Get a snapshot of the plugin's latency histograms and counters.
+     *
+     * @param {Function}
+     *            successCallback Called with the snapshot, durations in
+     *            milliseconds: { since, actions: { name: { calls, execute,
+     *            bridgeToUi, uiToShown, shownToCallback, total } }, counters }
+     * @param {Function}
+     *            errorCallback Called when the snapshot cannot be taken.
+     */
+    getMetrics : function(successCallback, errorCallback) {
+        exec(successCallback, errorCallback || null, 'Notification', 'getMetrics', []);
+    },
+
+    /**
+     * Reset all histograms and counters.
+     */
+    resetMetrics : function() {
+        exec(null, null, 'Notification', 'resetMetrics', []);
+    },
+
+    /**
+     * Set the progress dialog value, or the progress of one task.
+     * Calls are throttled to one per animation frame, only the latest values
+     * are sent to native.
      *
      * @param {Number}
-     *            value 0-100
+     *            value 0-100, or the id returned by progressStart when an
+     *            update follows.
+     * @param {Number|Object}
+     *            update Optional: the value of the task, 0-100, or
+     *            { value, bytes, total, weight }.
      */
-    progressValue : function(value) {
-        exec(null, null, 'Notification', 'progressValue', [ value ]);
+    progressValue : function(value, update) {
+        if (typeof update === "undefined") {
+            pendingProgressValue = value;
+        } else {
+            if (typeof update === "number") {
+                update = { value: update };
+            }
+            pendingProgressUpdates = pendingProgressUpdates || {};
+            var pending = pendingProgressUpdates[value] || {};
+            if (!("value" in update) && "bytes" in update) {
+                // A byte count must not be overridden by an older value.
+                delete pending.value;
+            }
+            for (var key in update) {
+                if (update.hasOwnProperty(key)) {
+                    pending[key] = update[key];
+                }
+            }
+            pendingProgressUpdates[value] = pending;
+        }
+        scheduleProgressFlush();
     }
 };
@@ -35,11 +35,16 @@ module.exports = {
      * @param {Function} completeCallback   The callback that is called when user clicks on a button.
      * @param {String} title                Title of the alert dialog (default: Alert)
      * @param {String} buttonLabel          Label of the close button (default: OK)
+     * @param {Object} options              Android only: scheduling options, e.g. { priority: 1 } (optional)
      */
-    alert: function(message, completeCallback, title, buttonLabel) {
+    alert: function(message, completeCallback, title, buttonLabel, options) {
         var _title = (title || "Alert");
         var _buttonLabel = (buttonLabel || "OK");
-        exec(completeCallback, null, "Notification", "alert", [message, _title, _buttonLabel]);
+        var args = [message, _title, _buttonLabel];
+        if (options) {
+            args.push(options);
+        }
+        exec(completeCallback, null, "Notification", "alert", args);
     },
 
     /**
@@ -50,8 +55,9 @@ module.exports = {
      * @param {Function} resultCallback     The callback that is called when user clicks on a button.
      * @param {String} title                Title of the alert dialog (default: Confirm)
      * @param {Array} buttonLabels          Array of the labels of the buttons (default: ['OK', 'Cancel'])
+     * @param {Object} options              Android only: scheduling options, e.g. { priority: 1 } (optional)
      */
-    confirm: function(message, resultCallback, title, buttonLabels) {
+    confirm: function(message, resultCallback, title, buttonLabels, options) {
         var _title = (title || "Confirm");
         var _buttonLabels = (buttonLabels || ["OK", "Cancel"]);
 
@@ -76,7 +82,11 @@ module.exports = {
                 _buttonLabels = buttonLabelArray.toString();
             }
         }
-        exec(resultCallback, null, "Notification", "confirm", [message, _title, _buttonLabels]);
+        var args = [message, _title, _buttonLabels];
+        if (options) {
+            args.push(options);
+        }
+        exec(resultCallback, null, "Notification", "confirm", args);
     },
 
     /**
@@ -90,23 +100,36 @@ module.exports = {
      * @param {String} title                Title of the dialog (default: "Prompt")
      * @param {Array} buttonLabels          Array of strings for the button labels (default: ["OK","Cancel"])
      * @param {String} defaultText          Textbox input value (default: empty string)
+     * @param {Object} options              Android only: scheduling options, e.g. { priority: 1 } (optional)
      */
-    prompt: function(message, resultCallback, title, buttonLabels, defaultText) {
+    prompt: function(message, resultCallback, title, buttonLabels, defaultText, options) {
         var _message = (message || "Prompt message");
         var _title = (title || "Prompt");
         var _buttonLabels = (buttonLabels || ["OK","Cancel"]);
         var _defaultText = (defaultText || "");
-        exec(resultCallback, null, "Notification", "prompt", [_message, _title, _buttonLabels, _defaultText]);
+        var args = [_message, _title, _buttonLabels, _defaultText];
+        if (options) {
+            args.push(options);
+        }
+        exec(resultCallback, null, "Notification", "prompt", args);
     },
 
     /**
      * Causes the device to beep.
      * On Android, the default notification ringtone is played "count" times.
      *
-     * @param {Integer} count       The number of beeps.
+     * @param {Integer} count               The number of beeps.
+     * @param {Function} completeCallback   Android only: called with the number of beeps played
+     *                                      once they are done or stopped (optional)
+     * @param {Integer} interval            Android only: milliseconds between two beeps
+     *                                      (default: length of the sound)
      */
-    beep: function(count) {
+    beep: function(count, completeCallback, interval) {
         var defaultedCount = count || 1;
-        exec(null, null, "Notification", "beep", [ defaultedCount ]);
+        var args = [ defaultedCount ];
+        if (interval) {
+            args.push(interval);
+        }
+        exec(completeCallback || null, null, "Notification", "beep", args);
     }
 };